@@ -0,0 +1,308 @@
+package de.hsheilbronn.mi.utils.test;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import org.apache.commons.dbcp2.BasicDataSource;
+
+/**
+ * Pool and driver settings for the {@link BasicDataSource}s created by the class rules. Settings not configured keep
+ * the {@link BasicDataSource} defaults, {@link #DEFAULT} validates connections on borrow via <code>SELECT 1</code>.
+ * <p>
+ * Example for bulk-insert tests:
+ *
+ * <pre>
+ * DataSourceConfig.builder().initialSize(4).minIdle(4).poolPreparedStatements(true)
+ * 		.validationPolicy(ValidationPolicy.WHILE_IDLE).reWriteBatchedInserts(true).prepareThreshold(1).build();
+ * </pre>
+ */
+public final class DataSourceConfig
+{
+	public enum ValidationPolicy
+	{
+		/**
+		 * Connections validated on borrow via validation query
+		 */
+		ON_BORROW,
+
+		/**
+		 * Connections validated on borrow via {@link java.sql.Connection#isValid(int)}, no validation query round trip
+		 * with pgjdbc versions using an empty query
+		 */
+		ON_BORROW_IS_VALID,
+
+		/**
+		 * Idle connections validated by the pool evictor via validation query, no validation on borrow. Test data
+		 * source pools are closed by {@link PostgresTemplateRule} before terminating connections to the test database
+		 * and started again afterwards.
+		 */
+		WHILE_IDLE,
+
+		/**
+		 * Connections not validated, test data source pools are closed by {@link PostgresTemplateRule} before
+		 * terminating connections to the test database and started again afterwards.
+		 */
+		NONE
+	}
+
+	public static final String DEFAULT_VALIDATION_QUERY = "SELECT 1";
+	public static final Duration DEFAULT_EVICTION_INTERVAL = Duration.ofSeconds(30);
+
+	public static final DataSourceConfig DEFAULT = builder().build();
+
+	public static Builder builder()
+	{
+		return new Builder();
+	}
+
+	public static final class Builder
+	{
+		private Integer initialSize;
+		private Integer minIdle;
+		private Integer maxIdle;
+		private Integer maxTotal;
+		private Boolean poolPreparedStatements;
+		private Integer maxOpenPreparedStatements;
+		private ValidationPolicy validationPolicy = ValidationPolicy.ON_BORROW;
+		private String validationQuery = DEFAULT_VALIDATION_QUERY;
+		private Duration evictionInterval = DEFAULT_EVICTION_INTERVAL;
+		private final Map<String, String> connectionProperties = new LinkedHashMap<>();
+
+		private Builder()
+		{
+		}
+
+		/**
+		 * @param initialSize
+		 *            number of connections created when the pool is started
+		 * @return this
+		 * @see BasicDataSource#setInitialSize(int)
+		 */
+		public Builder initialSize(int initialSize)
+		{
+			this.initialSize = initialSize;
+			return this;
+		}
+
+		/**
+		 * @param minIdle
+		 * @return this
+		 * @see BasicDataSource#setMinIdle(int)
+		 */
+		public Builder minIdle(int minIdle)
+		{
+			this.minIdle = minIdle;
+			return this;
+		}
+
+		/**
+		 * @param maxIdle
+		 * @return this
+		 * @see BasicDataSource#setMaxIdle(int)
+		 */
+		public Builder maxIdle(int maxIdle)
+		{
+			this.maxIdle = maxIdle;
+			return this;
+		}
+
+		/**
+		 * @param maxTotal
+		 * @return this
+		 * @see BasicDataSource#setMaxTotal(int)
+		 */
+		public Builder maxTotal(int maxTotal)
+		{
+			this.maxTotal = maxTotal;
+			return this;
+		}
+
+		/**
+		 * @param poolPreparedStatements
+		 * @return this
+		 * @see BasicDataSource#setPoolPreparedStatements(boolean)
+		 */
+		public Builder poolPreparedStatements(boolean poolPreparedStatements)
+		{
+			this.poolPreparedStatements = poolPreparedStatements;
+			return this;
+		}
+
+		/**
+		 * @param maxOpenPreparedStatements
+		 * @return this
+		 * @see BasicDataSource#setMaxOpenPreparedStatements(int)
+		 */
+		public Builder maxOpenPreparedStatements(int maxOpenPreparedStatements)
+		{
+			this.maxOpenPreparedStatements = maxOpenPreparedStatements;
+			return this;
+		}
+
+		/**
+		 * @param validationPolicy
+		 *            not <code>null</code>, default {@link ValidationPolicy#ON_BORROW}
+		 * @return this
+		 */
+		public Builder validationPolicy(ValidationPolicy validationPolicy)
+		{
+			this.validationPolicy = Objects.requireNonNull(validationPolicy, "validationPolicy");
+			return this;
+		}
+
+		/**
+		 * @param validationQuery
+		 *            not <code>null</code>, default {@value DataSourceConfig#DEFAULT_VALIDATION_QUERY}
+		 * @return this
+		 */
+		public Builder validationQuery(String validationQuery)
+		{
+			this.validationQuery = Objects.requireNonNull(validationQuery, "validationQuery");
+			return this;
+		}
+
+		/**
+		 * @param evictionInterval
+		 *            not <code>null</code>, interval of the pool evictor for {@link ValidationPolicy#WHILE_IDLE}
+		 * @return this
+		 */
+		public Builder evictionInterval(Duration evictionInterval)
+		{
+			this.evictionInterval = Objects.requireNonNull(evictionInterval, "evictionInterval");
+			return this;
+		}
+
+		/**
+		 * @param name
+		 *            not <code>null</code>, pgjdbc connection property name
+		 * @param value
+		 *            not <code>null</code>
+		 * @return this
+		 * @see BasicDataSource#addConnectionProperty(String, String)
+		 */
+		public Builder connectionProperty(String name, String value)
+		{
+			connectionProperties.put(Objects.requireNonNull(name, "name"), Objects.requireNonNull(value, "value"));
+			return this;
+		}
+
+		/**
+		 * @param prepareThreshold
+		 *            number of executions before pgjdbc switches to server side prepared statements
+		 * @return this
+		 */
+		public Builder prepareThreshold(int prepareThreshold)
+		{
+			return connectionProperty("prepareThreshold", String.valueOf(prepareThreshold));
+		}
+
+		/**
+		 * @param reWriteBatchedInserts
+		 *            <code>true</code> to let pgjdbc rewrite batched inserts into multi-row inserts
+		 * @return this
+		 */
+		public Builder reWriteBatchedInserts(boolean reWriteBatchedInserts)
+		{
+			return connectionProperty("reWriteBatchedInserts", String.valueOf(reWriteBatchedInserts));
+		}
+
+		/**
+		 * @param defaultRowFetchSize
+		 *            default fetch size of statements, <code>0</code> fetches all rows at once
+		 * @return this
+		 */
+		public Builder defaultRowFetchSize(int defaultRowFetchSize)
+		{
+			return connectionProperty("defaultRowFetchSize", String.valueOf(defaultRowFetchSize));
+		}
+
+		public DataSourceConfig build()
+		{
+			return new DataSourceConfig(initialSize, minIdle, maxIdle, maxTotal, poolPreparedStatements,
+					maxOpenPreparedStatements, validationPolicy, validationQuery, evictionInterval,
+					connectionProperties);
+		}
+	}
+
+	private final Integer initialSize;
+	private final Integer minIdle;
+	private final Integer maxIdle;
+	private final Integer maxTotal;
+	private final Boolean poolPreparedStatements;
+	private final Integer maxOpenPreparedStatements;
+	private final ValidationPolicy validationPolicy;
+	private final String validationQuery;
+	private final Duration evictionInterval;
+	private final Map<String, String> connectionProperties = new LinkedHashMap<>();
+
+	private DataSourceConfig(Integer initialSize, Integer minIdle, Integer maxIdle, Integer maxTotal,
+			Boolean poolPreparedStatements, Integer maxOpenPreparedStatements, ValidationPolicy validationPolicy,
+			String validationQuery, Duration evictionInterval, Map<String, String> connectionProperties)
+	{
+		this.initialSize = initialSize;
+		this.minIdle = minIdle;
+		this.maxIdle = maxIdle;
+		this.maxTotal = maxTotal;
+		this.poolPreparedStatements = poolPreparedStatements;
+		this.maxOpenPreparedStatements = maxOpenPreparedStatements;
+		this.validationPolicy = validationPolicy;
+		this.validationQuery = validationQuery;
+		this.evictionInterval = evictionInterval;
+		this.connectionProperties.putAll(connectionProperties);
+	}
+
+	public ValidationPolicy getValidationPolicy()
+	{
+		return validationPolicy;
+	}
+
+	public Map<String, String> getConnectionProperties()
+	{
+		return Collections.unmodifiableMap(connectionProperties);
+	}
+
+	/**
+	 * @param dataSource
+	 *            not <code>null</code>, not started
+	 */
+	void applyTo(BasicDataSource dataSource)
+	{
+		if (initialSize != null)
+			dataSource.setInitialSize(initialSize);
+		if (minIdle != null)
+			dataSource.setMinIdle(minIdle);
+		if (maxIdle != null)
+			dataSource.setMaxIdle(maxIdle);
+		if (maxTotal != null)
+			dataSource.setMaxTotal(maxTotal);
+		if (poolPreparedStatements != null)
+			dataSource.setPoolPreparedStatements(poolPreparedStatements);
+		if (maxOpenPreparedStatements != null)
+			dataSource.setMaxOpenPreparedStatements(maxOpenPreparedStatements);
+
+		switch (validationPolicy)
+		{
+			case ON_BORROW:
+				dataSource.setTestOnBorrow(true);
+				dataSource.setValidationQuery(validationQuery);
+				break;
+			case ON_BORROW_IS_VALID:
+				dataSource.setTestOnBorrow(true);
+				break;
+			case WHILE_IDLE:
+				dataSource.setTestOnBorrow(false);
+				dataSource.setTestWhileIdle(true);
+				dataSource.setValidationQuery(validationQuery);
+				dataSource.setDurationBetweenEvictionRuns(evictionInterval);
+				break;
+			case NONE:
+				dataSource.setTestOnBorrow(false);
+				break;
+		}
+
+		connectionProperties.forEach(dataSource::addConnectionProperty);
+	}
+}
@@ -0,0 +1,31 @@
+package de.hsheilbronn.mi.utils.test;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Configures the {@link ResetGranularity} of {@link PostgresTemplateRule}s used by the annotated test class, overrides
+ * the granularity configured via {@link PostgresTemplateRule#withResetGranularity(ResetGranularity)}.
+ *
+ * <pre>
+ * &#64;DatabaseReset(value = ResetGranularity.EVERY_N_TESTS, everyNTests = 5)
+ * public class ReadOnlyChecksTest
+ * </pre>
+ */
+@Documented
+@Inherited
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface DatabaseReset
+{
+	ResetGranularity value();
+
+	/**
+	 * @return number of tests between resets for {@link ResetGranularity#EVERY_N_TESTS}, &gt; 0
+	 */
+	int everyNTests() default 1;
+}
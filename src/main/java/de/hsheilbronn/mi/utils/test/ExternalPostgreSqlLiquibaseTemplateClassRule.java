@@ -1,13 +1,12 @@
 package de.hsheilbronn.mi.utils.test;
 
-import java.io.ByteArrayOutputStream;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Objects;
 
 import org.apache.commons.dbcp2.BasicDataSource;
 import org.junit.rules.ExternalResource;
@@ -15,56 +14,165 @@ import org.postgresql.Driver;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import liquibase.Contexts;
-import liquibase.LabelExpression;
-import liquibase.Scope;
-import liquibase.changelog.ChangeLogParameters;
-import liquibase.command.CommandScope;
-import liquibase.command.core.UpdateCommandStep;
-import liquibase.command.core.helpers.DatabaseChangelogCommandStep;
-import liquibase.command.core.helpers.DbUrlConnectionCommandStep;
-import liquibase.database.Database;
-import liquibase.database.DatabaseFactory;
-import liquibase.database.jvm.JdbcConnection;
-import liquibase.ui.LoggerUIService;
-
 public class ExternalPostgreSqlLiquibaseTemplateClassRule extends ExternalResource implements TemplateClassRule
 {
 	private static final Logger logger = LoggerFactory.getLogger(ExternalPostgreSqlLiquibaseTemplateClassRule.class);
 
+	public static final String DEFAULT_TEST_DB_HOST = "localhost";
+	public static final int DEFAULT_TEST_DB_PORT = 54321;
+	public static final String DEFAULT_TEST_ADMIN_DB_NAME = "postgres";
 	public static final String DEFAULT_TEST_DB_NAME = "db";
-	public static final String DEFAULT_TEST_ADMIN_DB_JDBC_URL = "jdbc:postgresql://localhost:54321/postgres";
-	public static final String DEFAULT_TEST_DB_JDBC_URL = "jdbc:postgresql://localhost:54321/" + DEFAULT_TEST_DB_NAME;
+	public static final String DEFAULT_TEST_ADMIN_DB_JDBC_URL = "jdbc:postgresql://" + DEFAULT_TEST_DB_HOST + ":"
+			+ DEFAULT_TEST_DB_PORT + "/" + DEFAULT_TEST_ADMIN_DB_NAME;
+	public static final String DEFAULT_TEST_DB_JDBC_URL = "jdbc:postgresql://" + DEFAULT_TEST_DB_HOST + ":"
+			+ DEFAULT_TEST_DB_PORT + "/" + DEFAULT_TEST_DB_NAME;
 	public static final String DEFAULT_TEST_DB_USERNAME = "postgres";
 	public static final String DEFAULT_TEST_DB_PASSWORD = "password";
 
 	public static BasicDataSource createTestDataSource()
+	{
+		return createDataSource(DEFAULT_TEST_DB_JDBC_URL, DEFAULT_TEST_DB_USERNAME, DEFAULT_TEST_DB_PASSWORD, true,
+				DataSourceConfig.DEFAULT);
+	}
+
+	public static BasicDataSource createRootBasicDataSource()
+	{
+		return createDataSource(DEFAULT_TEST_ADMIN_DB_JDBC_URL, DEFAULT_TEST_DB_USERNAME, DEFAULT_TEST_DB_PASSWORD,
+				false, DataSourceConfig.DEFAULT);
+	}
+
+	private static BasicDataSource createDataSource(String url, String username, String password, boolean readOnly,
+			DataSourceConfig config)
 	{
 		BasicDataSource dataSource = new BasicDataSource();
 		dataSource.setDriverClassName(Driver.class.getName());
-		dataSource.setUrl(DEFAULT_TEST_DB_JDBC_URL);
-		dataSource.setUsername(DEFAULT_TEST_DB_USERNAME);
-		dataSource.setPassword(DEFAULT_TEST_DB_PASSWORD);
-		dataSource.setDefaultReadOnly(true);
+		dataSource.setUrl(url);
+		dataSource.setUsername(username);
+		dataSource.setPassword(password);
+		if (readOnly)
+			dataSource.setDefaultReadOnly(true);
 
-		dataSource.setTestOnBorrow(true);
-		dataSource.setValidationQuery("SELECT 1");
+		config.applyTo(dataSource);
 
 		return dataSource;
 	}
 
-	public static BasicDataSource createRootBasicDataSource()
+	public static Builder builder()
 	{
-		BasicDataSource dataSource = new BasicDataSource();
-		dataSource.setDriverClassName(Driver.class.getName());
-		dataSource.setUrl(DEFAULT_TEST_ADMIN_DB_JDBC_URL);
-		dataSource.setUsername(DEFAULT_TEST_DB_USERNAME);
-		dataSource.setPassword(DEFAULT_TEST_DB_PASSWORD);
+		return new Builder();
+	}
 
-		dataSource.setTestOnBorrow(true);
-		dataSource.setValidationQuery("SELECT 1");
+	/**
+	 * Builder for {@link ExternalPostgreSqlLiquibaseTemplateClassRule}, root and test data sources are created from
+	 * host, port, credentials and the configured {@link DataSourceConfig}s. Defaults match the static
+	 * <code>DEFAULT_TEST_DB_*</code> constants, template database name and change log file are required.
+	 */
+	public static final class Builder
+	{
+		private String host = DEFAULT_TEST_DB_HOST;
+		private int port = DEFAULT_TEST_DB_PORT;
+		private String username = DEFAULT_TEST_DB_USERNAME;
+		private String password = DEFAULT_TEST_DB_PASSWORD;
+		private String rootDatabaseName = DEFAULT_TEST_ADMIN_DB_NAME;
+		private String testDatabaseName = DEFAULT_TEST_DB_NAME;
+		private String templateDatabaseName;
+		private String changeLogFile;
+		private final Map<String, String> changeLogParameters = new HashMap<>();
+		private boolean createTemplate = true;
+		private DataSourceConfig rootDataSourceConfig = DataSourceConfig.DEFAULT;
+		private DataSourceConfig testDataSourceConfig = DataSourceConfig.DEFAULT;
+
+		private Builder()
+		{
+		}
 
-		return dataSource;
+		public Builder host(String host)
+		{
+			this.host = Objects.requireNonNull(host, "host");
+			return this;
+		}
+
+		public Builder port(int port)
+		{
+			this.port = port;
+			return this;
+		}
+
+		public Builder username(String username)
+		{
+			this.username = Objects.requireNonNull(username, "username");
+			return this;
+		}
+
+		public Builder password(String password)
+		{
+			this.password = password;
+			return this;
+		}
+
+		public Builder rootDatabaseName(String rootDatabaseName)
+		{
+			this.rootDatabaseName = Objects.requireNonNull(rootDatabaseName, "rootDatabaseName");
+			return this;
+		}
+
+		public Builder testDatabaseName(String testDatabaseName)
+		{
+			this.testDatabaseName = Objects.requireNonNull(testDatabaseName, "testDatabaseName");
+			return this;
+		}
+
+		public Builder templateDatabaseName(String templateDatabaseName)
+		{
+			this.templateDatabaseName = Objects.requireNonNull(templateDatabaseName, "templateDatabaseName");
+			return this;
+		}
+
+		public Builder changeLogFile(String changeLogFile)
+		{
+			this.changeLogFile = Objects.requireNonNull(changeLogFile, "changeLogFile");
+			return this;
+		}
+
+		public Builder changeLogParameters(Map<String, String> changeLogParameters)
+		{
+			if (changeLogParameters != null)
+				this.changeLogParameters.putAll(changeLogParameters);
+			return this;
+		}
+
+		public Builder createTemplate(boolean createTemplate)
+		{
+			this.createTemplate = createTemplate;
+			return this;
+		}
+
+		public Builder rootDataSourceConfig(DataSourceConfig rootDataSourceConfig)
+		{
+			this.rootDataSourceConfig = Objects.requireNonNull(rootDataSourceConfig, "rootDataSourceConfig");
+			return this;
+		}
+
+		public Builder testDataSourceConfig(DataSourceConfig testDataSourceConfig)
+		{
+			this.testDataSourceConfig = Objects.requireNonNull(testDataSourceConfig, "testDataSourceConfig");
+			return this;
+		}
+
+		public ExternalPostgreSqlLiquibaseTemplateClassRule build()
+		{
+			Objects.requireNonNull(templateDatabaseName, "templateDatabaseName");
+			Objects.requireNonNull(changeLogFile, "changeLogFile");
+
+			String url = "jdbc:postgresql://" + host + ":" + port + "/";
+			BasicDataSource rootDataSource = createDataSource(url + rootDatabaseName, username, password, false,
+					rootDataSourceConfig);
+			BasicDataSource testDataSource = createDataSource(url + testDatabaseName, username, password, true,
+					testDataSourceConfig);
+
+			return new ExternalPostgreSqlLiquibaseTemplateClassRule(rootDataSource, testDatabaseName,
+					templateDatabaseName, testDataSource, changeLogFile, changeLogParameters, createTemplate);
+		}
 	}
 
 	private final BasicDataSource rootDataSource;
@@ -76,6 +184,8 @@ public class ExternalPostgreSqlLiquibaseTemplateClassRule extends ExternalResour
 	private final Map<String, String> changeLogParameters = new HashMap<>();
 	private final boolean createTemplate;
 
+	private boolean unloggedTables;
+
 	public ExternalPostgreSqlLiquibaseTemplateClassRule(BasicDataSource rootDataSource, String databaseName,
 			String templateDatabaseName, BasicDataSource testDataSource, String changeLogFile,
 			Map<String, String> changeLogParameters, boolean createTemplate)
@@ -91,6 +201,19 @@ public class ExternalPostgreSqlLiquibaseTemplateClassRule extends ExternalResour
 		this.createTemplate = createTemplate;
 	}
 
+	/**
+	 * Converts all tables of the migrated database to <i>UNLOGGED</i> before the template database is created, see
+	 * {@link UnloggedTables}.
+	 * 
+	 * @return this
+	 */
+	public ExternalPostgreSqlLiquibaseTemplateClassRule withUnloggedTables()
+	{
+		unloggedTables = true;
+
+		return this;
+	}
+
 	@Override
 	protected void before() throws Throwable
 	{
@@ -149,42 +272,10 @@ public class ExternalPostgreSqlLiquibaseTemplateClassRule extends ExternalResour
 				}
 			}
 
-			Scope.child(Scope.Attr.ui, new LoggerUIService(), () ->
-			{
-				try (Connection liquibaseConnection = testDataSource.getConnection())
-				{
-					liquibaseConnection.setReadOnly(false);
-
-					Database database = DatabaseFactory.getInstance()
-							.findCorrectDatabaseImplementation(new JdbcConnection(liquibaseConnection));
-
-					ChangeLogParameters changeLogParameters = new ChangeLogParameters(database);
-					this.changeLogParameters.forEach(changeLogParameters::set);
-					ByteArrayOutputStream output = new ByteArrayOutputStream();
-
-					CommandScope updateCommand = new CommandScope(UpdateCommandStep.COMMAND_NAME);
-					updateCommand.addArgumentValue(DbUrlConnectionCommandStep.DATABASE_ARG, database);
-					updateCommand.addArgumentValue(UpdateCommandStep.CHANGELOG_FILE_ARG, changeLogFile);
-					updateCommand.addArgumentValue(UpdateCommandStep.CONTEXTS_ARG, new Contexts().toString());
-					updateCommand.addArgumentValue(UpdateCommandStep.LABEL_FILTER_ARG,
-							new LabelExpression().getOriginalString());
-					updateCommand.addArgumentValue(DatabaseChangelogCommandStep.CHANGELOG_PARAMETERS,
-							changeLogParameters);
-					updateCommand.setOutput(output);
-
-					logger.info("Executing DB migration ...");
-					updateCommand.execute();
-
-					Arrays.stream(output.toString().split("[\r\n]+")).filter(row -> !row.isBlank())
-							.forEach(row -> logger.debug("{}", row));
-					logger.info("Executing DB migration [Done]");
-				}
-				catch (Exception e)
-				{
-					logger.warn("Error while runnig liquibase change-log: {}", e.getMessage());
-					throw e;
-				}
-			});
+			LiquibaseMigrator.migrate(testDataSource, changeLogFile, changeLogParameters);
+
+			if (UnloggedTables.isEnabled(unloggedTables))
+				UnloggedTables.convert(testDataSource, testDatabaseName);
 
 			if (createTemplate)
 				createTemplateDatabase(connection);
@@ -196,6 +287,12 @@ public class ExternalPostgreSqlLiquibaseTemplateClassRule extends ExternalResour
 		}
 	}
 
+	@Override
+	protected void after()
+	{
+		ResetState.remove(this);
+	}
+
 	public final void createTemplateDatabase(Connection connection) throws SQLException
 	{
 		if (!templateDbExists(connection))
@@ -248,6 +345,15 @@ public class ExternalPostgreSqlLiquibaseTemplateClassRule extends ExternalResour
 		}
 	}
 
+	/**
+	 * @return connection to the test database
+	 */
+	@Override
+	public BasicDataSource getTestDataSource()
+	{
+		return testDataSource;
+	}
+
 	@Override
 	public BasicDataSource getRootDataSource()
 	{
@@ -0,0 +1,20 @@
+package de.hsheilbronn.mi.utils.test;
+
+final class JdbcUrls
+{
+	private JdbcUrls()
+	{
+	}
+
+	/**
+	 * @param url
+	 *            PostgreSQL JDBC url, not <code>null</code>
+	 * @param databaseName
+	 *            not <code>null</code>
+	 * @return given url with the database replaced, url parameters are kept
+	 */
+	static String withDatabaseName(String url, String databaseName)
+	{
+		return url.replaceFirst("^(jdbc:postgresql://[^/]*/)[^?]*", "$1" + databaseName);
+	}
+}
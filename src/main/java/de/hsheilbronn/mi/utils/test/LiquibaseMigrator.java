@@ -0,0 +1,240 @@
+package de.hsheilbronn.mi.utils.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import liquibase.Contexts;
+import liquibase.LabelExpression;
+import liquibase.Scope;
+import liquibase.ThreadLocalScopeManager;
+import liquibase.changelog.ChangeLogParameters;
+import liquibase.changelog.ChangeSet;
+import liquibase.changelog.DatabaseChangeLog;
+import liquibase.changelog.visitor.AbstractChangeExecListener;
+import liquibase.command.CommandScope;
+import liquibase.command.core.UpdateCommandStep;
+import liquibase.command.core.helpers.ChangeExecListenerCommandStep;
+import liquibase.command.core.helpers.DatabaseChangelogCommandStep;
+import liquibase.command.core.helpers.DbUrlConnectionCommandStep;
+import liquibase.database.Database;
+import liquibase.database.DatabaseFactory;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.ui.LoggerUIService;
+
+/**
+ * Executes a liquibase change-log via a connection from the given {@link DataSource}, the connection is switched to
+ * read-write mode. Liquibase output is logged line by line while the migration is running, the execution time of each
+ * change set is measured and the slowest change sets are logged after the migration.
+ */
+final class LiquibaseMigrator
+{
+	private static final Logger logger = LoggerFactory.getLogger(LiquibaseMigrator.class);
+
+	/**
+	 * System property to configure the number of slowest change sets logged after a migration, default
+	 * {@value #DEFAULT_SLOWEST_CHANGE_SETS}: <code>-Ddb-test-utils.liquibase.slowest-change-sets=20</code>
+	 */
+	static final String SLOWEST_CHANGE_SETS_PROPERTY = "db-test-utils.liquibase.slowest-change-sets";
+	static final int DEFAULT_SLOWEST_CHANGE_SETS = 10;
+
+	private static boolean threadLocalScopeManager;
+
+	/**
+	 * Execution time of one change set
+	 */
+	static final class ChangeSetTiming
+	{
+		private final String changeSet;
+		private final Duration duration;
+
+		private ChangeSetTiming(String changeSet, Duration duration)
+		{
+			this.changeSet = changeSet;
+			this.duration = duration;
+		}
+
+		String getChangeSet()
+		{
+			return changeSet;
+		}
+
+		Duration getDuration()
+		{
+			return duration;
+		}
+	}
+
+	/**
+	 * Measures and logs the execution time of each change set
+	 */
+	static final class TimingChangeExecListener extends AbstractChangeExecListener
+	{
+		private final Map<String, Long> started = new HashMap<>();
+		private final List<ChangeSetTiming> timings = new ArrayList<>();
+
+		@Override
+		public void willRun(ChangeSet changeSet, DatabaseChangeLog databaseChangeLog, Database database,
+				ChangeSet.RunStatus runStatus)
+		{
+			started.put(changeSet.toString(false), System.nanoTime());
+
+			logger.info("Change set {} started", changeSet.toString(false));
+		}
+
+		@Override
+		public void ran(ChangeSet changeSet, DatabaseChangeLog databaseChangeLog, Database database,
+				ChangeSet.ExecType execType)
+		{
+			Long start = started.remove(changeSet.toString(false));
+			if (start == null)
+				return;
+
+			ChangeSetTiming timing = new ChangeSetTiming(changeSet.toString(false),
+					Duration.ofNanos(System.nanoTime() - start));
+			timings.add(timing);
+
+			logger.info("Change set {} {} in {} ms", timing.getChangeSet(), execType, timing.getDuration().toMillis());
+		}
+
+		@Override
+		public void runFailed(ChangeSet changeSet, DatabaseChangeLog databaseChangeLog, Database database,
+				Exception exception)
+		{
+			Long start = started.remove(changeSet.toString(false));
+			if (start != null)
+				logger.warn("Change set {} failed after {} ms", changeSet.toString(false),
+						Duration.ofNanos(System.nanoTime() - start).toMillis());
+		}
+
+		List<ChangeSetTiming> getTimings()
+		{
+			return timings;
+		}
+	}
+
+	/**
+	 * Passes every non blank line written to the stream to the given consumer, lines are expected to be UTF-8 encoded.
+	 * A last line without line separator is passed on {@link #close()}.
+	 */
+	static final class LineLoggingOutputStream extends OutputStream
+	{
+		private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+		private final Consumer<String> lineConsumer;
+
+		LineLoggingOutputStream(Consumer<String> lineConsumer)
+		{
+			this.lineConsumer = lineConsumer;
+		}
+
+		@Override
+		public void write(int b)
+		{
+			if (b == '\n' || b == '\r')
+				logLine();
+			else
+				line.write(b);
+		}
+
+		@Override
+		public void close()
+		{
+			logLine();
+		}
+
+		private void logLine()
+		{
+			String row = line.toString(StandardCharsets.UTF_8);
+			line.reset();
+
+			if (!row.isBlank())
+				lineConsumer.accept(row);
+		}
+	}
+
+	private LiquibaseMigrator()
+	{
+	}
+
+	/**
+	 * Replaces the default liquibase scope manager, sharing the current scope between all threads, with a scope manager
+	 * using one scope per thread. Required before executing migrations in parallel.
+	 */
+	static synchronized void useThreadLocalScopeManager()
+	{
+		if (!threadLocalScopeManager)
+		{
+			Scope.setScopeManager(new ThreadLocalScopeManager(Scope.getCurrentScope()));
+			threadLocalScopeManager = true;
+		}
+	}
+
+	static void migrate(DataSource dataSource, String changeLogFile, Map<String, String> changeLogParameters)
+			throws Exception
+	{
+		Scope.child(Scope.Attr.ui, new LoggerUIService(), () ->
+		{
+			try (Connection liquibaseConnection = dataSource.getConnection();
+					LineLoggingOutputStream output = new LineLoggingOutputStream(line -> logger.debug("{}", line)))
+			{
+				liquibaseConnection.setReadOnly(false);
+
+				Database database = DatabaseFactory.getInstance()
+						.findCorrectDatabaseImplementation(new JdbcConnection(liquibaseConnection));
+
+				ChangeLogParameters parameters = new ChangeLogParameters(database);
+				changeLogParameters.forEach(parameters::set);
+				TimingChangeExecListener listener = new TimingChangeExecListener();
+
+				CommandScope updateCommand = new CommandScope(UpdateCommandStep.COMMAND_NAME);
+				updateCommand.addArgumentValue(DbUrlConnectionCommandStep.DATABASE_ARG, database);
+				updateCommand.addArgumentValue(UpdateCommandStep.CHANGELOG_FILE_ARG, changeLogFile);
+				updateCommand.addArgumentValue(UpdateCommandStep.CONTEXTS_ARG, new Contexts().toString());
+				updateCommand.addArgumentValue(UpdateCommandStep.LABEL_FILTER_ARG,
+						new LabelExpression().getOriginalString());
+				updateCommand.addArgumentValue(DatabaseChangelogCommandStep.CHANGELOG_PARAMETERS, parameters);
+				updateCommand.addArgumentValue(ChangeExecListenerCommandStep.CHANGE_EXEC_LISTENER_ARG, listener);
+				updateCommand.setOutput(output);
+
+				logger.info("Executing DB migration ...");
+				long start = System.nanoTime();
+				updateCommand.execute();
+				Duration duration = Duration.ofNanos(System.nanoTime() - start);
+
+				logger.info("Executing DB migration [Done], {} change sets in {} ms", listener.getTimings().size(),
+						duration.toMillis());
+				logSlowest(listener.getTimings());
+			}
+			catch (Exception e)
+			{
+				logger.warn("Error while runnig liquibase change-log: {} - {}", e.getClass().getName(),
+						e.getMessage());
+				throw e;
+			}
+		});
+	}
+
+	private static void logSlowest(List<ChangeSetTiming> timings)
+	{
+		int limit = Integer.getInteger(SLOWEST_CHANGE_SETS_PROPERTY, DEFAULT_SLOWEST_CHANGE_SETS);
+		if (limit <= 0 || timings.isEmpty())
+			return;
+
+		logger.info("Slowest change sets:");
+		timings.stream().sorted(Comparator.comparing(ChangeSetTiming::getDuration).reversed()).limit(limit)
+				.forEach(t -> logger.info("  {} ms {}", t.getDuration().toMillis(), t.getChangeSet()));
+	}
+}
@@ -0,0 +1,73 @@
+package de.hsheilbronn.mi.utils.test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Test database migrated by a liquibase change-log and template database created from it, used by
+ * {@link MultiLiquibaseTemplateClassRule}.
+ */
+public final class LiquibaseTemplateSpec
+{
+	private final String changeLogFile;
+	private final Map<String, String> changeLogParameters = new HashMap<>();
+	private final String databaseName;
+	private final String templateDatabaseName;
+
+	/**
+	 * Template database named <code>&lt;databaseName&gt;_template</code>
+	 *
+	 * @param changeLogFile
+	 *            not <code>null</code>
+	 * @param changeLogParameters
+	 *            may be <code>null</code>
+	 * @param databaseName
+	 *            not <code>null</code>
+	 */
+	public LiquibaseTemplateSpec(String changeLogFile, Map<String, String> changeLogParameters, String databaseName)
+	{
+		this(changeLogFile, changeLogParameters, databaseName, databaseName + "_template");
+	}
+
+	/**
+	 * @param changeLogFile
+	 *            not <code>null</code>
+	 * @param changeLogParameters
+	 *            may be <code>null</code>
+	 * @param databaseName
+	 *            not <code>null</code>
+	 * @param templateDatabaseName
+	 *            not <code>null</code>
+	 */
+	public LiquibaseTemplateSpec(String changeLogFile, Map<String, String> changeLogParameters, String databaseName,
+			String templateDatabaseName)
+	{
+		this.changeLogFile = Objects.requireNonNull(changeLogFile, "changeLogFile");
+		if (changeLogParameters != null)
+			this.changeLogParameters.putAll(changeLogParameters);
+		this.databaseName = Objects.requireNonNull(databaseName, "databaseName");
+		this.templateDatabaseName = Objects.requireNonNull(templateDatabaseName, "templateDatabaseName");
+	}
+
+	public String getChangeLogFile()
+	{
+		return changeLogFile;
+	}
+
+	public Map<String, String> getChangeLogParameters()
+	{
+		return Collections.unmodifiableMap(changeLogParameters);
+	}
+
+	public String getDatabaseName()
+	{
+		return databaseName;
+	}
+
+	public String getTemplateDatabaseName()
+	{
+		return templateDatabaseName;
+	}
+}
@@ -0,0 +1,548 @@
+package de.hsheilbronn.mi.utils.test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.commons.dbcp2.BasicDataSource;
+import org.junit.ClassRule;
+import org.junit.rules.ExternalResource;
+import org.junit.rules.TestRule;
+import org.postgresql.Driver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Implements a {@link ClassRule} to start a PostgreSQL server from a local installation without docker and execute a
+ * liquibase migration script. A new database cluster is created via <i>initdb</i> in a temporary directory, located on
+ * the tmpfs <code>/dev/shm</code> if available, and the server is started on a free port with durability features
+ * disabled. The cluster is deleted after all tests. A template database is created automatically or can be created by
+ * calling {@link #createTemplateDatabase()}. Use in combination with {@link TestRule} {@link PostgresTemplateRule} to
+ * recreated the test database with the created template database.
+ * <p>
+ * The PostgreSQL server refuses to start if executed as operating system user <i>root</i>.
+ */
+public class LocalPostgreSqlLiquibaseTemplateClassRule extends ExternalResource implements TemplateClassRule
+{
+	private static final Logger logger = LoggerFactory.getLogger(LocalPostgreSqlLiquibaseTemplateClassRule.class);
+
+	public static final String ROOT_DATABASE_NAME = "postgres";
+	public static final String DEFAULT_ROOT_USER = "postgres";
+
+	private static final Path TMPFS = Paths.get("/dev/shm");
+	private static final long STARTUP_TIMEOUT_MILLIS = 30_000;
+	private static final long SHUTDOWN_TIMEOUT_SECONDS = 10;
+
+	private final Path postgresBinDirectory;
+	private final String rootUser;
+	private final String testDatabaseName;
+	private final String templateDatabaseName;
+
+	private final String changeLogFile;
+	private final Map<String, String> changeLogParameters = new HashMap<>();
+	private final boolean createTemplate;
+
+	private final DataSourceConfig rootDataSourceConfig;
+	private final DataSourceConfig testDataSourceConfig;
+
+	private boolean unloggedTables;
+
+	private Path dataDirectory;
+	private int port;
+	private Process postgres;
+
+	private BasicDataSource rootDataSource;
+	private BasicDataSource testDataSource;
+
+	/**
+	 * @param postgresBinDirectory
+	 *            directory containing the <i>initdb</i> and <i>postgres</i> executables, e.g.
+	 *            <code>/usr/lib/postgresql/15/bin</code>
+	 * @param rootUser
+	 *            superuser name of the new database cluster
+	 * @param testDatabaseName
+	 * @param templateDatabaseName
+	 * @param changeLogFile
+	 * @param changeLogParameters
+	 * @param createTemplate
+	 */
+	public LocalPostgreSqlLiquibaseTemplateClassRule(Path postgresBinDirectory, String rootUser,
+			String testDatabaseName, String templateDatabaseName, String changeLogFile,
+			Map<String, String> changeLogParameters, boolean createTemplate)
+	{
+		this(postgresBinDirectory, rootUser, testDatabaseName, templateDatabaseName, changeLogFile, changeLogParameters,
+				createTemplate, DataSourceConfig.DEFAULT, DataSourceConfig.DEFAULT);
+	}
+
+	private LocalPostgreSqlLiquibaseTemplateClassRule(Path postgresBinDirectory, String rootUser,
+			String testDatabaseName, String templateDatabaseName, String changeLogFile,
+			Map<String, String> changeLogParameters, boolean createTemplate, DataSourceConfig rootDataSourceConfig,
+			DataSourceConfig testDataSourceConfig)
+	{
+		this.postgresBinDirectory = postgresBinDirectory;
+		this.rootUser = rootUser;
+		this.testDatabaseName = testDatabaseName;
+		this.templateDatabaseName = templateDatabaseName;
+
+		this.changeLogFile = changeLogFile;
+		if (changeLogParameters != null)
+			this.changeLogParameters.putAll(changeLogParameters);
+		this.createTemplate = createTemplate;
+
+		this.rootDataSourceConfig = rootDataSourceConfig;
+		this.testDataSourceConfig = testDataSourceConfig;
+	}
+
+	public static Builder builder(Path postgresBinDirectory)
+	{
+		return new Builder(postgresBinDirectory);
+	}
+
+	/**
+	 * Builder for {@link LocalPostgreSqlLiquibaseTemplateClassRule}, test and template database name and change log
+	 * file are required. Root user defaults to <code>postgres</code>, template creation is enabled by default.
+	 */
+	public static final class Builder
+	{
+		private final Path postgresBinDirectory;
+		private String rootUser = DEFAULT_ROOT_USER;
+		private String testDatabaseName;
+		private String templateDatabaseName;
+		private String changeLogFile;
+		private final Map<String, String> changeLogParameters = new HashMap<>();
+		private boolean createTemplate = true;
+		private DataSourceConfig rootDataSourceConfig = DataSourceConfig.DEFAULT;
+		private DataSourceConfig testDataSourceConfig = DataSourceConfig.DEFAULT;
+
+		private Builder(Path postgresBinDirectory)
+		{
+			this.postgresBinDirectory = Objects.requireNonNull(postgresBinDirectory, "postgresBinDirectory");
+		}
+
+		public Builder rootUser(String rootUser)
+		{
+			this.rootUser = Objects.requireNonNull(rootUser, "rootUser");
+			return this;
+		}
+
+		public Builder testDatabaseName(String testDatabaseName)
+		{
+			this.testDatabaseName = Objects.requireNonNull(testDatabaseName, "testDatabaseName");
+			return this;
+		}
+
+		public Builder templateDatabaseName(String templateDatabaseName)
+		{
+			this.templateDatabaseName = Objects.requireNonNull(templateDatabaseName, "templateDatabaseName");
+			return this;
+		}
+
+		public Builder changeLogFile(String changeLogFile)
+		{
+			this.changeLogFile = Objects.requireNonNull(changeLogFile, "changeLogFile");
+			return this;
+		}
+
+		public Builder changeLogParameters(Map<String, String> changeLogParameters)
+		{
+			if (changeLogParameters != null)
+				this.changeLogParameters.putAll(changeLogParameters);
+			return this;
+		}
+
+		public Builder createTemplate(boolean createTemplate)
+		{
+			this.createTemplate = createTemplate;
+			return this;
+		}
+
+		public Builder rootDataSourceConfig(DataSourceConfig rootDataSourceConfig)
+		{
+			this.rootDataSourceConfig = Objects.requireNonNull(rootDataSourceConfig, "rootDataSourceConfig");
+			return this;
+		}
+
+		public Builder testDataSourceConfig(DataSourceConfig testDataSourceConfig)
+		{
+			this.testDataSourceConfig = Objects.requireNonNull(testDataSourceConfig, "testDataSourceConfig");
+			return this;
+		}
+
+		public LocalPostgreSqlLiquibaseTemplateClassRule build()
+		{
+			Objects.requireNonNull(testDatabaseName, "testDatabaseName");
+			Objects.requireNonNull(templateDatabaseName, "templateDatabaseName");
+			Objects.requireNonNull(changeLogFile, "changeLogFile");
+
+			return new LocalPostgreSqlLiquibaseTemplateClassRule(postgresBinDirectory, rootUser, testDatabaseName,
+					templateDatabaseName, changeLogFile, changeLogParameters, createTemplate, rootDataSourceConfig,
+					testDataSourceConfig);
+		}
+	}
+
+	private BasicDataSource createRootDataSource()
+	{
+		BasicDataSource dataSource = new BasicDataSource();
+		dataSource.setDriverClassName(Driver.class.getName());
+		dataSource.setUrl(getJdbcUrl(ROOT_DATABASE_NAME));
+		dataSource.setUsername(rootUser);
+
+		rootDataSourceConfig.applyTo(dataSource);
+
+		return dataSource;
+	}
+
+	private BasicDataSource createTestDataSource()
+	{
+		BasicDataSource dataSource = new BasicDataSource();
+		dataSource.setDriverClassName(Driver.class.getName());
+		dataSource.setUrl(getJdbcUrl(testDatabaseName));
+		dataSource.setUsername(rootUser);
+		dataSource.setDefaultReadOnly(true);
+
+		testDataSourceConfig.applyTo(dataSource);
+
+		return dataSource;
+	}
+
+	private String getJdbcUrl(String databaseName)
+	{
+		return "jdbc:postgresql://localhost:" + port + "/" + databaseName;
+	}
+
+	/**
+	 * Converts all tables of the migrated database to <i>UNLOGGED</i> before the template database is created, see
+	 * {@link UnloggedTables}.
+	 * 
+	 * @return this
+	 */
+	public LocalPostgreSqlLiquibaseTemplateClassRule withUnloggedTables()
+	{
+		unloggedTables = true;
+
+		return this;
+	}
+
+	@Override
+	protected void before() throws Throwable
+	{
+		Path parent = Files.isDirectory(TMPFS) && Files.isWritable(TMPFS) ? TMPFS
+				: Paths.get(System.getProperty("java.io.tmpdir"));
+		dataDirectory = Files.createTempDirectory(parent, "db-test-utils-");
+		port = findFreePort();
+
+		// after() not called by JUnit if before() fails, stop server and delete data directory
+		try
+		{
+			initDb();
+			startPostgres();
+			createAndMigrateDatabase();
+		}
+		catch (Throwable e)
+		{
+			after();
+			throw e;
+		}
+	}
+
+	private void createAndMigrateDatabase()
+	{
+		try
+		{
+			rootDataSource = createRootDataSource();
+			rootDataSource.start();
+		}
+		catch (SQLException e)
+		{
+			logger.warn("Error while connecting to root database '{}': {}", ROOT_DATABASE_NAME, e.getMessage());
+			throw new RuntimeException(e);
+		}
+
+		try (Connection connection = rootDataSource.getConnection();
+				PreparedStatement statement = connection.prepareStatement("CREATE DATABASE " + testDatabaseName))
+		{
+			logger.debug("Executing: {}", statement.toString());
+			statement.execute();
+		}
+		catch (SQLException e)
+		{
+			logger.warn("Error while creating database '{}': {}", testDatabaseName, e.getMessage());
+			throw new RuntimeException(e);
+		}
+
+		try
+		{
+			testDataSource = createTestDataSource();
+			testDataSource.start();
+		}
+		catch (SQLException e)
+		{
+			logger.warn("Error while connecting to database '{}': {}", testDatabaseName, e.getMessage());
+			throw new RuntimeException(e);
+		}
+
+		try
+		{
+			LiquibaseMigrator.migrate(testDataSource, changeLogFile, changeLogParameters);
+		}
+		catch (Exception e)
+		{
+			logger.warn("Unable to execute database migration: {} - {}", e.getClass().getName(), e.getMessage());
+			throw new RuntimeException(e);
+		}
+
+		if (UnloggedTables.isEnabled(unloggedTables))
+			UnloggedTables.convert(testDataSource, testDatabaseName);
+
+		if (createTemplate)
+			createTemplateDatabase();
+	}
+
+	private static int findFreePort() throws IOException
+	{
+		try (ServerSocket socket = new ServerSocket(0))
+		{
+			return socket.getLocalPort();
+		}
+	}
+
+	private void initDb() throws IOException, InterruptedException
+	{
+		logger.info("Creating database cluster in {} ...", dataDirectory);
+
+		Process initDb = new ProcessBuilder(postgresBinDirectory.resolve("initdb").toString(), "-D",
+				dataDirectory.toString(), "-U", rootUser, "-A", "trust", "-E", "UTF8", "--no-sync")
+				.redirectErrorStream(true).start();
+
+		List<String> output;
+		try (BufferedReader reader = new BufferedReader(
+				new InputStreamReader(initDb.getInputStream(), StandardCharsets.UTF_8)))
+		{
+			output = reader.lines().collect(Collectors.toList());
+		}
+
+		int exitValue = initDb.waitFor();
+		output.forEach(line -> logger.debug("{}", line));
+
+		if (exitValue != 0)
+		{
+			logger.warn("Error while creating database cluster, initdb exit value {}: {}", exitValue,
+					String.join(System.lineSeparator(), output));
+			throw new RuntimeException("initdb exit value " + exitValue);
+		}
+
+		logger.info("Creating database cluster in {} [Done]", dataDirectory);
+	}
+
+	private void startPostgres() throws IOException, InterruptedException
+	{
+		logger.info("Starting PostgreSQL on port {} ...", port);
+
+		List<String> command = new ArrayList<>();
+		command.add(postgresBinDirectory.resolve("postgres").toString());
+		command.addAll(List.of("-D", dataDirectory.toString(), "-p", String.valueOf(port), "-k",
+				dataDirectory.toString()));
+		command.addAll(List.of("-c", "listen_addresses=localhost", "-c", "fsync=off", "-c", "synchronous_commit=off",
+				"-c", "full_page_writes=off", "-c", "log_min_messages=NOTICE"));
+
+		postgres = new ProcessBuilder(command).redirectErrorStream(true).start();
+
+		Thread logThread = new Thread(() ->
+		{
+			try (BufferedReader reader = new BufferedReader(
+					new InputStreamReader(postgres.getInputStream(), StandardCharsets.UTF_8)))
+			{
+				reader.lines().forEach(line -> logger.debug("{}", line));
+			}
+			catch (IOException | UncheckedIOException e)
+			{
+				logger.debug("PostgreSQL output closed: {}", e.getMessage());
+			}
+		}, "postgres-" + port);
+		logThread.setDaemon(true);
+		logThread.start();
+
+		long timeout = System.currentTimeMillis() + STARTUP_TIMEOUT_MILLIS;
+		while (true)
+		{
+			if (!postgres.isAlive())
+				throw new RuntimeException("PostgreSQL exited with value " + postgres.exitValue());
+
+			try (Connection connection = DriverManager.getConnection(getJdbcUrl(ROOT_DATABASE_NAME), rootUser, null))
+			{
+				break;
+			}
+			catch (SQLException e)
+			{
+				if (System.currentTimeMillis() > timeout)
+				{
+					logger.warn("PostgreSQL not ready after {} ms: {}", STARTUP_TIMEOUT_MILLIS, e.getMessage());
+					throw new RuntimeException(e);
+				}
+
+				Thread.sleep(20);
+			}
+		}
+
+		logger.info("Starting PostgreSQL on port {} [Done]", port);
+	}
+
+	public final void createTemplateDatabase()
+	{
+		try (Connection connection = rootDataSource.getConnection())
+		{
+			logger.info("Creating template database '{}' from database '{}'", templateDatabaseName, testDatabaseName);
+
+			try (PreparedStatement statement = connection.prepareStatement(
+					"SELECT pg_terminate_backend(pg_stat_activity.pid) FROM pg_stat_activity WHERE datname = ?"))
+			{
+				statement.setString(1, testDatabaseName);
+
+				logger.debug("Executing: {}", statement.toString());
+				statement.execute();
+			}
+			catch (SQLException e)
+			{
+				logger.warn("Error while terminating database '{}' backend: {}", testDatabaseName, e.getMessage());
+				throw new RuntimeException(e);
+			}
+
+			try (PreparedStatement statement = connection
+					.prepareStatement("CREATE DATABASE " + templateDatabaseName + " TEMPLATE " + testDatabaseName))
+			{
+				logger.debug("Executing: {}", statement.toString());
+				statement.execute();
+			}
+			catch (SQLException e)
+			{
+				logger.warn("Error while creating template databse '{}': {}", templateDatabaseName, e.getMessage());
+				throw new RuntimeException(e);
+			}
+		}
+		catch (SQLException e)
+		{
+			logger.warn("Error while connecting to root database '{}': {}", ROOT_DATABASE_NAME, e.getMessage());
+			throw new RuntimeException(e);
+		}
+	}
+
+	@Override
+	protected void after()
+	{
+		ResetState.remove(this);
+
+		try
+		{
+			if (testDataSource != null)
+				testDataSource.close();
+			if (rootDataSource != null)
+				rootDataSource.close();
+		}
+		catch (SQLException e)
+		{
+			logger.warn("Error while closing data sources: {}", e.getMessage());
+		}
+
+		if (postgres != null)
+		{
+			logger.info("Stopping PostgreSQL on port {}", port);
+
+			try
+			{
+				// fast shutdown (SIGINT), Process.destroy() sends SIGTERM waiting for clients to disconnect
+				Process pgCtl = new ProcessBuilder(postgresBinDirectory.resolve("pg_ctl").toString(), "-D",
+						dataDirectory.toString(), "stop", "-m", "fast", "-w", "-t",
+						String.valueOf(SHUTDOWN_TIMEOUT_SECONDS)).redirectErrorStream(true)
+						.redirectOutput(ProcessBuilder.Redirect.DISCARD).start();
+
+				if (!pgCtl.waitFor(SHUTDOWN_TIMEOUT_SECONDS + 5, TimeUnit.SECONDS) || pgCtl.exitValue() != 0)
+					logger.warn("pg_ctl stop failed for PostgreSQL on port {}", port);
+
+				if (!postgres.waitFor(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS))
+				{
+					logger.warn("PostgreSQL on port {} not stopped after {} s, killing", port,
+							SHUTDOWN_TIMEOUT_SECONDS);
+					postgres.destroyForcibly().waitFor();
+				}
+			}
+			catch (IOException e)
+			{
+				logger.warn("Error while executing pg_ctl: {}", e.getMessage());
+				postgres.destroyForcibly();
+			}
+			catch (InterruptedException e)
+			{
+				postgres.destroyForcibly();
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		if (dataDirectory != null)
+		{
+			try (Stream<Path> paths = Files.walk(dataDirectory))
+			{
+				paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+			}
+			catch (IOException e)
+			{
+				logger.warn("Error while deleting database cluster {}: {}", dataDirectory, e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * @return port of the local PostgreSQL server
+	 */
+	public int getPort()
+	{
+		return port;
+	}
+
+	@Override
+	public String getDatabaseName()
+	{
+		return testDatabaseName;
+	}
+
+	@Override
+	public String getTemplateDatabaseName()
+	{
+		return templateDatabaseName;
+	}
+
+	/**
+	 * @return read-only connection to the test database
+	 *
+	 * @see BasicDataSource#setDefaultReadOnly(Boolean)
+	 */
+	@Override
+	public BasicDataSource getTestDataSource()
+	{
+		return testDataSource;
+	}
+
+	@Override
+	public BasicDataSource getRootDataSource()
+	{
+		return rootDataSource;
+	}
+}
@@ -0,0 +1,318 @@
+package de.hsheilbronn.mi.utils.test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.apache.commons.dbcp2.BasicDataSource;
+import org.junit.ClassRule;
+import org.junit.rules.ExternalResource;
+import org.junit.rules.RuleChain;
+import org.postgresql.Driver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testcontainers.containers.JdbcDatabaseContainer;
+
+/**
+ * Implements a {@link ClassRule} to migrate multiple test databases on one PostgreSQL server and create a template
+ * database for each. Liquibase migrations are executed in parallel on a bounded thread pool. Use in a
+ * {@link RuleChain} around the rule starting the server, e.g. a {@link JdbcDatabaseContainer}, and in combination with
+ * {@link PostgresTemplateRule}s constructed with {@link #getTemplate(String)}.
+ * <p>
+ * Change-logs executed in parallel must not create the same global objects like roles.
+ */
+public class MultiLiquibaseTemplateClassRule extends ExternalResource
+{
+	private static final Logger logger = LoggerFactory.getLogger(MultiLiquibaseTemplateClassRule.class);
+
+	/**
+	 * {@link TemplateClassRule} for one {@link LiquibaseTemplateSpec}, available after the
+	 * {@link MultiLiquibaseTemplateClassRule} was applied.
+	 */
+	public final class Template implements TemplateClassRule
+	{
+		private final LiquibaseTemplateSpec spec;
+
+		private BasicDataSource testDataSource;
+
+		private Template(LiquibaseTemplateSpec spec)
+		{
+			this.spec = spec;
+		}
+
+		@Override
+		public BasicDataSource getRootDataSource()
+		{
+			return rootDataSource;
+		}
+
+		@Override
+		public String getDatabaseName()
+		{
+			return spec.getDatabaseName();
+		}
+
+		@Override
+		public String getTemplateDatabaseName()
+		{
+			return spec.getTemplateDatabaseName();
+		}
+
+		/**
+		 * @return read-only connection to the test database
+		 *
+		 * @see BasicDataSource#setDefaultReadOnly(Boolean)
+		 */
+		@Override
+		public BasicDataSource getTestDataSource()
+		{
+			return testDataSource;
+		}
+	}
+
+	private final Supplier<BasicDataSource> rootDataSourceSupplier;
+	private final int parallelism;
+	private final DataSourceConfig testDataSourceConfig;
+	private final Map<String, Template> templates = new LinkedHashMap<>();
+
+	private BasicDataSource rootDataSource;
+
+	/**
+	 * @param container
+	 *            not <code>null</code>, root data source created from the containers JDBC url and credentials after the
+	 *            container was started
+	 * @param parallelism
+	 *            maximum number of parallel migrations, &gt; 0
+	 * @param specs
+	 *            not <code>null</code>, database names must be unique
+	 */
+	public MultiLiquibaseTemplateClassRule(JdbcDatabaseContainer<?> container, int parallelism,
+			List<LiquibaseTemplateSpec> specs)
+	{
+		this(() ->
+		{
+			BasicDataSource dataSource = new BasicDataSource();
+			dataSource.setDriverClassName(Driver.class.getName());
+			dataSource.setUrl(container.getJdbcUrl());
+			dataSource.setUsername(container.getUsername());
+			dataSource.setPassword(container.getPassword());
+
+			DataSourceConfig.DEFAULT.applyTo(dataSource);
+
+			return dataSource;
+		}, parallelism, specs, DataSourceConfig.DEFAULT);
+	}
+
+	/**
+	 * @param rootDataSourceSupplier
+	 *            not <code>null</code>, called once when the rule is applied, the data source is closed after all tests
+	 * @param parallelism
+	 *            maximum number of parallel migrations, &gt; 0
+	 * @param specs
+	 *            not <code>null</code>, database names must be unique
+	 * @param testDataSourceConfig
+	 *            not <code>null</code>, configuration of the test data sources
+	 */
+	public MultiLiquibaseTemplateClassRule(Supplier<BasicDataSource> rootDataSourceSupplier, int parallelism,
+			List<LiquibaseTemplateSpec> specs, DataSourceConfig testDataSourceConfig)
+	{
+		if (parallelism <= 0)
+			throw new IllegalArgumentException("parallelism <= 0");
+
+		this.rootDataSourceSupplier = Objects.requireNonNull(rootDataSourceSupplier, "rootDataSourceSupplier");
+		this.parallelism = parallelism;
+		this.testDataSourceConfig = Objects.requireNonNull(testDataSourceConfig, "testDataSourceConfig");
+
+		Objects.requireNonNull(specs, "specs").forEach(spec ->
+		{
+			if (templates.put(spec.getDatabaseName(), new Template(spec)) != null)
+				throw new IllegalArgumentException("Database name '" + spec.getDatabaseName() + "' not unique");
+		});
+	}
+
+	@Override
+	protected void before() throws Throwable
+	{
+		rootDataSource = rootDataSourceSupplier.get();
+		rootDataSource.start();
+
+		logger.info("Creating {} template databases, parallelism {} ...", templates.size(), parallelism);
+
+		LiquibaseMigrator.useThreadLocalScopeManager();
+
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, Math.max(templates.size(), 1)));
+		try
+		{
+			List<Future<Void>> futures = new ArrayList<>();
+			for (Template template : templates.values())
+			{
+				futures.add(executor.submit(() ->
+				{
+					createTemplate(template);
+					return null;
+				}));
+			}
+
+			for (Future<Void> future : futures)
+				future.get();
+		}
+		catch (ExecutionException e)
+		{
+			logger.warn("Error while creating template databases: {}", e.getCause().getMessage());
+
+			// after() not called by JUnit if before() fails
+			shutdown(executor);
+			after();
+
+			throw e.getCause();
+		}
+		finally
+		{
+			shutdown(executor);
+		}
+
+		logger.info("Creating {} template databases [Done]", templates.size());
+	}
+
+	private void shutdown(ExecutorService executor) throws InterruptedException
+	{
+		executor.shutdownNow();
+
+		if (!executor.awaitTermination(1, TimeUnit.MINUTES))
+			logger.warn("Template creation not finished 1 minute after shutdown");
+	}
+
+	private void createTemplate(Template template) throws Exception
+	{
+		String databaseName = template.getDatabaseName();
+		String templateDatabaseName = template.getTemplateDatabaseName();
+
+		try (Connection connection = rootDataSource.getConnection())
+		{
+			execute(connection, "SELECT pg_terminate_backend(pg_stat_activity.pid) FROM pg_stat_activity "
+					+ "WHERE datname = ? OR datname = ?", databaseName, templateDatabaseName);
+			execute(connection, "DROP DATABASE IF EXISTS " + databaseName);
+			execute(connection, "DROP DATABASE IF EXISTS " + templateDatabaseName);
+			execute(connection, "CREATE DATABASE " + databaseName);
+		}
+
+		template.testDataSource = new BasicDataSource();
+		template.testDataSource.setDriverClassName(Driver.class.getName());
+		template.testDataSource.setUrl(JdbcUrls.withDatabaseName(rootDataSource.getUrl(), databaseName));
+		template.testDataSource.setUsername(getUsername(rootDataSource));
+		template.testDataSource.setPassword(getPassword(rootDataSource));
+		template.testDataSource.setDefaultReadOnly(true);
+		testDataSourceConfig.applyTo(template.testDataSource);
+		template.testDataSource.start();
+
+		logger.info("Migrating database '{}' ...", databaseName);
+		LiquibaseMigrator.migrate(template.testDataSource, template.spec.getChangeLogFile(),
+				template.spec.getChangeLogParameters());
+		logger.info("Migrating database '{}' [Done]", databaseName);
+
+		try (Connection connection = rootDataSource.getConnection())
+		{
+			logger.info("Creating template database '{}' from database '{}'", templateDatabaseName, databaseName);
+
+			execute(connection,
+					"SELECT pg_terminate_backend(pg_stat_activity.pid) FROM pg_stat_activity WHERE datname = ?",
+					databaseName);
+			execute(connection, "CREATE DATABASE " + templateDatabaseName + " TEMPLATE " + databaseName);
+		}
+	}
+
+	// credentials only accessible via the supplied root data source
+	@SuppressWarnings("deprecation")
+	private static String getUsername(BasicDataSource dataSource)
+	{
+		return dataSource.getUsername();
+	}
+
+	@SuppressWarnings("deprecation")
+	private static String getPassword(BasicDataSource dataSource)
+	{
+		return dataSource.getPassword();
+	}
+
+	private void execute(Connection connection, String sql, String... parameters) throws SQLException
+	{
+		try (PreparedStatement statement = connection.prepareStatement(sql))
+		{
+			for (int i = 0; i < parameters.length; i++)
+				statement.setString(i + 1, parameters[i]);
+
+			logger.debug("Executing: {}", statement.toString());
+			statement.execute();
+		}
+		catch (SQLException e)
+		{
+			logger.warn("Error while executing '{}': {}", sql, e.getMessage());
+			throw e;
+		}
+	}
+
+	@Override
+	protected void after()
+	{
+		for (Template template : templates.values())
+		{
+			ResetState.remove(template);
+
+			try
+			{
+				if (template.testDataSource != null)
+					template.testDataSource.close();
+			}
+			catch (SQLException e)
+			{
+				logger.warn("Error while closing data source for database '{}': {}", template.getDatabaseName(),
+						e.getMessage());
+			}
+		}
+
+		try
+		{
+			if (rootDataSource != null)
+				rootDataSource.close();
+		}
+		catch (SQLException e)
+		{
+			logger.warn("Error while closing root data source: {}", e.getMessage());
+		}
+	}
+
+	/**
+	 * @param databaseName
+	 *            not <code>null</code>
+	 * @return template for the spec with the given database name
+	 * @throws IllegalArgumentException
+	 *             if no spec with the given database name configured
+	 */
+	public Template getTemplate(String databaseName)
+	{
+		Template template = templates.get(databaseName);
+		if (template == null)
+			throw new IllegalArgumentException("No template for database '" + databaseName + "' configured");
+
+		return template;
+	}
+
+	/**
+	 * @return templates in spec order
+	 */
+	public List<Template> getTemplates()
+	{
+		return new ArrayList<>(templates.values());
+	}
+}
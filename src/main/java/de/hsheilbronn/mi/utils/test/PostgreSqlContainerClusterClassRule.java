@@ -0,0 +1,521 @@
+package de.hsheilbronn.mi.utils.test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.apache.commons.dbcp2.BasicDataSource;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.rules.ExternalResource;
+import org.junit.runner.Description;
+import org.postgresql.Driver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Implements a {@link ClassRule} starting multiple {@link PostgreSqlContainerLiquibaseTemplateClassRule} containers
+ * (shards), each with a migrated template database. Every test gets its own test database via a {@link Rule} created
+ * with {@link #newDatabaseRule()}, the database is created from the template on the shard with the fewest test
+ * databases in use and dropped after the test.
+ * <p>
+ * If the average duration of the last {@value #CLONE_LATENCY_WINDOW} <i>CREATE DATABASE ... TEMPLATE</i> statements
+ * exceeds the configured threshold, an additional shard is started in the background up to the configured maximum.
+ * Enable {@link PostgreSqlContainerLiquibaseTemplateClassRule#withMigrationImageCache()} on the shards created by the
+ * factory, to start additional shards from the migrated image instead of executing the migration again.
+ */
+public class PostgreSqlContainerClusterClassRule extends ExternalResource
+{
+	private static final Logger logger = LoggerFactory.getLogger(PostgreSqlContainerClusterClassRule.class);
+
+	static final int CLONE_LATENCY_WINDOW = 20;
+
+	public static Builder builder(Supplier<PostgreSqlContainerLiquibaseTemplateClassRule> shardFactory)
+	{
+		return new Builder(shardFactory);
+	}
+
+	/**
+	 * Builder for {@link PostgreSqlContainerClusterClassRule}, defaults to two initial shards, no additional shards and
+	 * a clone latency threshold of one second.
+	 */
+	public static final class Builder
+	{
+		private final Supplier<PostgreSqlContainerLiquibaseTemplateClassRule> shardFactory;
+		private int initialShards = 2;
+		private int maxShards = 2;
+		private Duration scaleUpCloneLatency = Duration.ofSeconds(1);
+		private DataSourceConfig testDataSourceConfig = DataSourceConfig.DEFAULT;
+
+		private Builder(Supplier<PostgreSqlContainerLiquibaseTemplateClassRule> shardFactory)
+		{
+			this.shardFactory = Objects.requireNonNull(shardFactory, "shardFactory");
+		}
+
+		/**
+		 * @param initialShards
+		 *            &gt; 0, also sets max shards if lower
+		 * @return this
+		 */
+		public Builder initialShards(int initialShards)
+		{
+			if (initialShards <= 0)
+				throw new IllegalArgumentException("initialShards <= 0");
+
+			this.initialShards = initialShards;
+			this.maxShards = Math.max(maxShards, initialShards);
+			return this;
+		}
+
+		/**
+		 * @param maxShards
+		 *            &gt;= initial shards
+		 * @return this
+		 */
+		public Builder maxShards(int maxShards)
+		{
+			this.maxShards = maxShards;
+			return this;
+		}
+
+		/**
+		 * @param scaleUpCloneLatency
+		 *            not <code>null</code>, average clone latency above which an additional shard is started
+		 * @return this
+		 */
+		public Builder scaleUpCloneLatency(Duration scaleUpCloneLatency)
+		{
+			this.scaleUpCloneLatency = Objects.requireNonNull(scaleUpCloneLatency, "scaleUpCloneLatency");
+			return this;
+		}
+
+		public Builder testDataSourceConfig(DataSourceConfig testDataSourceConfig)
+		{
+			this.testDataSourceConfig = Objects.requireNonNull(testDataSourceConfig, "testDataSourceConfig");
+			return this;
+		}
+
+		public PostgreSqlContainerClusterClassRule build()
+		{
+			if (maxShards < initialShards)
+				throw new IllegalArgumentException("maxShards < initialShards");
+
+			return new PostgreSqlContainerClusterClassRule(shardFactory, initialShards, maxShards,
+					scaleUpCloneLatency, testDataSourceConfig);
+		}
+	}
+
+	private static final class Shard
+	{
+		final int index;
+		final PostgreSqlContainerLiquibaseTemplateClassRule container;
+
+		int activeDatabases;
+		int clones;
+		long cloneNanos;
+
+		Shard(int index, PostgreSqlContainerLiquibaseTemplateClassRule container)
+		{
+			this.index = index;
+			this.container = container;
+		}
+	}
+
+	/**
+	 * Test {@link Rule} creating a test database on the least loaded shard before and dropping it after each test.
+	 *
+	 * @see PostgreSqlContainerClusterClassRule#newDatabaseRule()
+	 */
+	public final class ShardedDatabaseRule extends ExternalResource
+	{
+		private Shard shard;
+		private String databaseName;
+		private BasicDataSource testDataSource;
+
+		private ShardedDatabaseRule()
+		{
+		}
+
+		@Override
+		protected void before() throws Throwable
+		{
+			shard = lease();
+			databaseName = shard.container.getDatabaseName() + "_" + databaseCounter.incrementAndGet();
+
+			try
+			{
+				createDatabase(shard, databaseName);
+			}
+			catch (Throwable e)
+			{
+				release(shard);
+				throw e;
+			}
+
+			try
+			{
+				testDataSource = new BasicDataSource();
+				testDataSource.setDriverClassName(Driver.class.getName());
+				testDataSource.setUrl(
+						JdbcUrls.withDatabaseName(shard.container.getRootDataSource().getUrl(), databaseName));
+				testDataSource.setUsername(shard.container.getUsername());
+				testDataSource.setPassword(shard.container.getPassword());
+				testDataSource.setDefaultReadOnly(true);
+				testDataSourceConfig.applyTo(testDataSource);
+				testDataSource.start();
+			}
+			catch (Throwable e)
+			{
+				// after() not called by JUnit if before() fails
+				after();
+				throw e;
+			}
+		}
+
+		@Override
+		protected void after()
+		{
+			try
+			{
+				if (testDataSource != null)
+					testDataSource.close();
+			}
+			catch (SQLException e)
+			{
+				logger.warn("Error while closing data source for database '{}': {}", databaseName, e.getMessage());
+			}
+
+			try
+			{
+				dropDatabase(shard, databaseName);
+			}
+			finally
+			{
+				release(shard);
+			}
+		}
+
+		/**
+		 * @return read-only connection to the test database of the current test
+		 *
+		 * @see BasicDataSource#setDefaultReadOnly(Boolean)
+		 */
+		public BasicDataSource getTestDataSource()
+		{
+			return testDataSource;
+		}
+
+		/**
+		 * @return connection to the root database of the shard used by the current test
+		 */
+		public BasicDataSource getRootDataSource()
+		{
+			return shard.container.getRootDataSource();
+		}
+
+		/**
+		 * @return name of the test database of the current test
+		 */
+		public String getDatabaseName()
+		{
+			return databaseName;
+		}
+
+		/**
+		 * @return index of the shard used by the current test, starting with 0
+		 */
+		public int getShardIndex()
+		{
+			return shard.index;
+		}
+	}
+
+	private final Supplier<PostgreSqlContainerLiquibaseTemplateClassRule> shardFactory;
+	private final int initialShards;
+	private final int maxShards;
+	private final Duration scaleUpCloneLatency;
+	private final DataSourceConfig testDataSourceConfig;
+
+	private final List<Shard> shards = new CopyOnWriteArrayList<>();
+	private final Deque<Long> cloneLatencies = new ArrayDeque<>();
+	private final AtomicInteger databaseCounter = new AtomicInteger();
+
+	private ExecutorService scaleUpExecutor;
+	private Future<?> scaleUp;
+
+	private PostgreSqlContainerClusterClassRule(Supplier<PostgreSqlContainerLiquibaseTemplateClassRule> shardFactory,
+			int initialShards, int maxShards, Duration scaleUpCloneLatency, DataSourceConfig testDataSourceConfig)
+	{
+		this.shardFactory = shardFactory;
+		this.initialShards = initialShards;
+		this.maxShards = maxShards;
+		this.scaleUpCloneLatency = scaleUpCloneLatency;
+		this.testDataSourceConfig = testDataSourceConfig;
+	}
+
+	/**
+	 * @return new test {@link Rule}, use as non static field annotated with {@link Rule}
+	 */
+	public ShardedDatabaseRule newDatabaseRule()
+	{
+		return new ShardedDatabaseRule();
+	}
+
+	@Override
+	protected void before() throws Throwable
+	{
+		scaleUpExecutor = Executors.newSingleThreadExecutor(r ->
+		{
+			Thread thread = new Thread(r, "postgres-cluster-scale-up");
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		logger.info("Starting {} shards ...", initialShards);
+
+		try
+		{
+			startInitialShards();
+		}
+		catch (Throwable e)
+		{
+			// after() not called by JUnit if before() fails, stops shards already started
+			after();
+			throw e;
+		}
+
+		logger.info("Starting {} shards [Done]", initialShards);
+	}
+
+	private void startInitialShards() throws Throwable
+	{
+		// first shard started alone, creates the migration image cache if enabled
+		shards.add(startShard(0));
+
+		if (initialShards > 1)
+		{
+			ExecutorService executor = Executors.newFixedThreadPool(initialShards - 1);
+			try
+			{
+				List<Future<Shard>> futures = new ArrayList<>();
+				for (int i = 1; i < initialShards; i++)
+				{
+					int index = i;
+					futures.add(executor.submit(() -> startShard(index)));
+				}
+
+				// waiting for all shards, started shards must be stopped if one fails
+				Throwable failure = null;
+				for (Future<Shard> future : futures)
+				{
+					try
+					{
+						shards.add(future.get());
+					}
+					catch (ExecutionException e)
+					{
+						logger.warn("Error while starting shards: {}", e.getCause().getMessage());
+
+						if (failure == null)
+							failure = e.getCause();
+					}
+				}
+
+				if (failure != null)
+					throw failure;
+			}
+			finally
+			{
+				executor.shutdownNow();
+			}
+		}
+	}
+
+	private Shard startShard(int index)
+	{
+		logger.info("Starting shard {} ...", index);
+
+		PostgreSqlContainerLiquibaseTemplateClassRule container = shardFactory.get();
+		try
+		{
+			container.starting(createShardDescription(index));
+		}
+		catch (RuntimeException e)
+		{
+			container.stop();
+			throw e;
+		}
+
+		logger.info("Starting shard {} [Done]", index);
+
+		return new Shard(index, container);
+	}
+
+	private Description createShardDescription(int index)
+	{
+		return Description.createSuiteDescription(PostgreSqlContainerClusterClassRule.class.getName() + "#" + index);
+	}
+
+	private synchronized Shard lease()
+	{
+		Shard shard = shards.stream()
+				.min(Comparator.<Shard> comparingInt(s -> s.activeDatabases).thenComparingInt(s -> s.clones)).get();
+		shard.activeDatabases++;
+
+		return shard;
+	}
+
+	private synchronized void release(Shard shard)
+	{
+		shard.activeDatabases--;
+	}
+
+	private void createDatabase(Shard shard, String databaseName) throws SQLException
+	{
+		long start = System.nanoTime();
+
+		try (Connection connection = shard.container.getRootDataSource().getConnection();
+				PreparedStatement statement = connection.prepareStatement(
+						"CREATE DATABASE " + databaseName + " TEMPLATE " + shard.container.getTemplateDatabaseName()))
+		{
+			logger.debug("Executing: {}", statement.toString());
+			statement.execute();
+		}
+		catch (SQLException e)
+		{
+			logger.warn("Error while creating database '{}' on shard {}: {}", databaseName, shard.index,
+					e.getMessage());
+			throw e;
+		}
+
+		cloned(shard, System.nanoTime() - start);
+	}
+
+	private synchronized void cloned(Shard shard, long nanos)
+	{
+		shard.clones++;
+		shard.cloneNanos += nanos;
+
+		cloneLatencies.addLast(nanos);
+		if (cloneLatencies.size() > CLONE_LATENCY_WINDOW)
+			cloneLatencies.removeFirst();
+
+		if (cloneLatencies.size() < CLONE_LATENCY_WINDOW || (scaleUp != null && !scaleUp.isDone())
+				|| shards.size() >= maxShards)
+			return;
+
+		Duration average = Duration
+				.ofNanos((long) cloneLatencies.stream().mapToLong(Long::longValue).average().orElse(0));
+		if (average.compareTo(scaleUpCloneLatency) > 0)
+		{
+			logger.info("Average clone latency {} ms above {} ms, adding shard {}", average.toMillis(),
+					scaleUpCloneLatency.toMillis(), shards.size());
+
+			int index = shards.size();
+			cloneLatencies.clear();
+			scaleUp = scaleUpExecutor.submit(() ->
+			{
+				try
+				{
+					shards.add(startShard(index));
+				}
+				catch (RuntimeException e)
+				{
+					logger.warn("Error while starting shard {}: {}", index, e.getMessage());
+				}
+			});
+		}
+	}
+
+	private void dropDatabase(Shard shard, String databaseName)
+	{
+		try (Connection connection = shard.container.getRootDataSource().getConnection())
+		{
+			try (PreparedStatement statement = connection.prepareStatement(
+					"SELECT pg_terminate_backend(pg_stat_activity.pid) FROM pg_stat_activity WHERE datname = ?"))
+			{
+				statement.setString(1, databaseName);
+
+				logger.debug("Executing: {}", statement.toString());
+				statement.execute();
+			}
+
+			try (PreparedStatement statement = connection.prepareStatement("DROP DATABASE " + databaseName))
+			{
+				logger.debug("Executing: {}", statement.toString());
+				statement.execute();
+			}
+		}
+		catch (SQLException e)
+		{
+			logger.warn("Error while dropping database '{}' on shard {}: {}", databaseName, shard.index,
+					e.getMessage());
+			throw new RuntimeException(e);
+		}
+	}
+
+	@SuppressWarnings("deprecation")
+	@Override
+	protected void after()
+	{
+		if (scaleUpExecutor != null)
+		{
+			scaleUpExecutor.shutdown();
+
+			try
+			{
+				if (!scaleUpExecutor.awaitTermination(5, TimeUnit.MINUTES))
+					logger.warn("Shard start not finished after 5 minutes");
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		for (Shard shard : shards)
+		{
+			synchronized (this)
+			{
+				logger.info("Shard {}: {} databases created, average clone latency {} ms", shard.index, shard.clones,
+						shard.clones == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(shard.cloneNanos / shard.clones));
+			}
+
+			try
+			{
+				shard.container.succeeded(createShardDescription(shard.index));
+			}
+			catch (RuntimeException e)
+			{
+				logger.warn("Error while closing data sources of shard {}: {}", shard.index, e.getMessage());
+			}
+
+			shard.container.stop();
+		}
+
+		shards.clear();
+	}
+
+	/**
+	 * @return number of started shards
+	 */
+	public int getShardCount()
+	{
+		return shards.size();
+	}
+}
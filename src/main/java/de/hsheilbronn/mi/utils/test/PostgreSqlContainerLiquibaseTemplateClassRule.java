@@ -1,13 +1,22 @@
 package de.hsheilbronn.mi.utils.test;
 
-import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
 
 import org.apache.commons.dbcp2.BasicDataSource;
 import org.junit.ClassRule;
@@ -16,22 +25,25 @@ import org.junit.runner.Description;
 import org.postgresql.Driver;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.testcontainers.DockerClientFactory;
+import org.testcontainers.containers.Container.ExecResult;
+import org.testcontainers.containers.Network;
 import org.testcontainers.containers.PostgreSQLContainer;
 import org.testcontainers.containers.output.Slf4jLogConsumer;
+import org.testcontainers.containers.wait.strategy.LogMessageWaitStrategy;
 import org.testcontainers.utility.DockerImageName;
 
-import liquibase.Contexts;
-import liquibase.LabelExpression;
-import liquibase.Scope;
+import com.github.dockerjava.api.exception.NotFoundException;
+
+import liquibase.ChecksumVersion;
 import liquibase.changelog.ChangeLogParameters;
-import liquibase.command.CommandScope;
-import liquibase.command.core.UpdateCommandStep;
-import liquibase.command.core.helpers.DatabaseChangelogCommandStep;
-import liquibase.command.core.helpers.DbUrlConnectionCommandStep;
+import liquibase.changelog.ChangeSet;
+import liquibase.changelog.DatabaseChangeLog;
 import liquibase.database.Database;
-import liquibase.database.DatabaseFactory;
-import liquibase.database.jvm.JdbcConnection;
-import liquibase.ui.LoggerUIService;
+import liquibase.database.core.PostgresDatabase;
+import liquibase.parser.ChangeLogParserFactory;
+import liquibase.resource.ClassLoaderResourceAccessor;
+import liquibase.resource.ResourceAccessor;
 
 /**
  * Implements a {@link ClassRule} to start a PostgreSQL docker container and execute a liquibase migration script. A
@@ -46,6 +58,16 @@ public class PostgreSqlContainerLiquibaseTemplateClassRule
 {
 	private static final Logger logger = LoggerFactory.getLogger(PostgreSqlContainerLiquibaseTemplateClassRule.class);
 
+	public static final String IMAGE_CACHE_REPOSITORY = "db-test-utils-cache";
+	public static final String IMAGE_CACHE_SCOPE_LABEL = "de.hsheilbronn.mi.utils.test.cache.scope";
+
+	private static final String IMAGE_CACHE_PGDATA = "/var/lib/postgresql/pgdata";
+
+	public static final String DEFAULT_ROOT_USER = "postgres";
+
+	private static final String PRIMARY_NETWORK_ALIAS = "primary";
+	private static final String REPLICA_NETWORK_ALIAS_PREFIX = "replica-";
+
 	private final String testDatabaseName;
 	private final String templateDatabaseName;
 
@@ -53,12 +75,33 @@ public class PostgreSqlContainerLiquibaseTemplateClassRule
 	private final Map<String, String> changeLogParameters = new HashMap<>();
 	private final boolean createTemplate;
 
+	private final DataSourceConfig rootDataSourceConfig;
+	private final DataSourceConfig testDataSourceConfig;
+
+	private boolean unloggedTables;
+	private boolean imageCache;
+	private String imageCacheScope;
+	private String imageCacheKey;
+
+	private int replicaCount;
+	private Network replicaNetwork;
+	private final List<StreamingReplica> replicas = new ArrayList<>();
+
 	private BasicDataSource rootDataSource;
 	private BasicDataSource testDataSource;
 
 	public PostgreSqlContainerLiquibaseTemplateClassRule(DockerImageName dockerImageName, String rootUser,
 			String testDatabaseName, String templateDatabaseName, String changeLogFile,
 			Map<String, String> changeLogParameters, boolean createTemplate)
+	{
+		this(dockerImageName, rootUser, testDatabaseName, templateDatabaseName, changeLogFile, changeLogParameters,
+				createTemplate, DataSourceConfig.DEFAULT, DataSourceConfig.DEFAULT);
+	}
+
+	private PostgreSqlContainerLiquibaseTemplateClassRule(DockerImageName dockerImageName, String rootUser,
+			String testDatabaseName, String templateDatabaseName, String changeLogFile,
+			Map<String, String> changeLogParameters, boolean createTemplate, DataSourceConfig rootDataSourceConfig,
+			DataSourceConfig testDataSourceConfig)
 	{
 		super(dockerImageName);
 		withUsername(rootUser);
@@ -73,6 +116,101 @@ public class PostgreSqlContainerLiquibaseTemplateClassRule
 		if (changeLogParameters != null)
 			this.changeLogParameters.putAll(changeLogParameters);
 		this.createTemplate = createTemplate;
+
+		this.rootDataSourceConfig = rootDataSourceConfig;
+		this.testDataSourceConfig = testDataSourceConfig;
+	}
+
+	public static Builder builder(DockerImageName dockerImageName)
+	{
+		return new Builder(dockerImageName);
+	}
+
+	/**
+	 * Builder for {@link PostgreSqlContainerLiquibaseTemplateClassRule}, test and template database name and change log
+	 * file are required. Root user defaults to <code>postgres</code>, template creation is enabled by default.
+	 */
+	public static final class Builder
+	{
+		private final DockerImageName dockerImageName;
+		private String rootUser = DEFAULT_ROOT_USER;
+		private String testDatabaseName;
+		private String templateDatabaseName;
+		private String changeLogFile;
+		private final Map<String, String> changeLogParameters = new HashMap<>();
+		private boolean createTemplate = true;
+		private DataSourceConfig rootDataSourceConfig = DataSourceConfig.DEFAULT;
+		private DataSourceConfig testDataSourceConfig = DataSourceConfig.DEFAULT;
+
+		private Builder(DockerImageName dockerImageName)
+		{
+			this.dockerImageName = Objects.requireNonNull(dockerImageName, "dockerImageName");
+		}
+
+		public Builder rootUser(String rootUser)
+		{
+			this.rootUser = Objects.requireNonNull(rootUser, "rootUser");
+			return this;
+		}
+
+		public Builder testDatabaseName(String testDatabaseName)
+		{
+			this.testDatabaseName = Objects.requireNonNull(testDatabaseName, "testDatabaseName");
+			return this;
+		}
+
+		public Builder templateDatabaseName(String templateDatabaseName)
+		{
+			this.templateDatabaseName = Objects.requireNonNull(templateDatabaseName, "templateDatabaseName");
+			return this;
+		}
+
+		public Builder changeLogFile(String changeLogFile)
+		{
+			this.changeLogFile = Objects.requireNonNull(changeLogFile, "changeLogFile");
+			return this;
+		}
+
+		public Builder changeLogParameters(Map<String, String> changeLogParameters)
+		{
+			if (changeLogParameters != null)
+				this.changeLogParameters.putAll(changeLogParameters);
+			return this;
+		}
+
+		public Builder createTemplate(boolean createTemplate)
+		{
+			this.createTemplate = createTemplate;
+			return this;
+		}
+
+		public Builder rootDataSourceConfig(DataSourceConfig rootDataSourceConfig)
+		{
+			this.rootDataSourceConfig = Objects.requireNonNull(rootDataSourceConfig, "rootDataSourceConfig");
+			return this;
+		}
+
+		/**
+		 * @param testDataSourceConfig
+		 *            not <code>null</code>, also used for replica data sources
+		 * @return this
+		 */
+		public Builder testDataSourceConfig(DataSourceConfig testDataSourceConfig)
+		{
+			this.testDataSourceConfig = Objects.requireNonNull(testDataSourceConfig, "testDataSourceConfig");
+			return this;
+		}
+
+		public PostgreSqlContainerLiquibaseTemplateClassRule build()
+		{
+			Objects.requireNonNull(testDatabaseName, "testDatabaseName");
+			Objects.requireNonNull(templateDatabaseName, "templateDatabaseName");
+			Objects.requireNonNull(changeLogFile, "changeLogFile");
+
+			return new PostgreSqlContainerLiquibaseTemplateClassRule(dockerImageName, rootUser, testDatabaseName,
+					templateDatabaseName, changeLogFile, changeLogParameters, createTemplate, rootDataSourceConfig,
+					testDataSourceConfig);
+		}
 	}
 
 	private BasicDataSource createRootDataSource()
@@ -83,8 +221,7 @@ public class PostgreSqlContainerLiquibaseTemplateClassRule
 		dataSource.setUsername(getUsername());
 		dataSource.setPassword(getPassword());
 
-		dataSource.setTestOnBorrow(true);
-		dataSource.setValidationQuery("SELECT 1");
+		rootDataSourceConfig.applyTo(dataSource);
 
 		return dataSource;
 	}
@@ -98,16 +235,100 @@ public class PostgreSqlContainerLiquibaseTemplateClassRule
 		dataSource.setPassword(getPassword());
 		dataSource.setDefaultReadOnly(true);
 
-		dataSource.setTestOnBorrow(true);
-		dataSource.setValidationQuery("SELECT 1");
+		testDataSourceConfig.applyTo(dataSource);
 
 		return dataSource;
 	}
 
+	/**
+	 * Enables caching of the migrated container as local docker image <code>db-test-utils-cache:&lt;key&gt;</code>. The
+	 * key is computed from docker image, database names, root user, change log parameters and the checksums of all
+	 * liquibase change sets. If an image with the computed key exists, the container is started from that image and
+	 * <i>initdb</i>, database migration and template creation are skipped. Otherwise the container is committed as new
+	 * image after migration and template creation, stale images created for the same configuration but different change
+	 * sets are removed. <i>PGDATA</i> is moved from the docker volume to <code>/var/lib/postgresql/pgdata</code> to be
+	 * included in the image.
+	 * 
+	 * @return this
+	 */
+	public PostgreSqlContainerLiquibaseTemplateClassRule withMigrationImageCache()
+	{
+		withEnv("PGDATA", IMAGE_CACHE_PGDATA);
+		imageCache = true;
+
+		return this;
+	}
+
+	/**
+	 * Converts all tables of the migrated database to <i>UNLOGGED</i> before the template database is created, see
+	 * {@link UnloggedTables}. Unlogged tables are not streamed to replicas, the rule fails to start if combined with
+	 * {@link #withStreamingReplicas(int)} and the conversion is not disabled via system property.
+	 * 
+	 * @return this
+	 */
+	public PostgreSqlContainerLiquibaseTemplateClassRule withUnloggedTables()
+	{
+		unloggedTables = true;
+
+		return this;
+	}
+
+	/**
+	 * Starts the given number of hot standby containers streaming from the PostgreSQL container via a shared docker
+	 * network. Replicas are initialized via <i>pg_basebackup</i> after database migration and template creation. Can
+	 * not be combined with {@link #withUnloggedTables()}, unlogged tables are not readable on replicas.
+	 * 
+	 * @param count
+	 *            &gt; 0
+	 * @return this
+	 * @see #getReplicaDataSource()
+	 * @see #awaitReplicas()
+	 */
+	public PostgreSqlContainerLiquibaseTemplateClassRule withStreamingReplicas(int count)
+	{
+		if (count <= 0)
+			throw new IllegalArgumentException("count <= 0");
+
+		replicaCount = count;
+
+		if (replicaNetwork == null)
+		{
+			replicaNetwork = Network.newNetwork();
+			withNetwork(replicaNetwork);
+			withNetworkAliases(PRIMARY_NETWORK_ALIAS);
+		}
+
+		return this;
+	}
+
 	@SuppressWarnings("deprecation")
 	@Override
 	protected void starting(Description description)
 	{
+		if (replicaCount > 0 && UnloggedTables.isEnabled(unloggedTables))
+			throw new IllegalStateException(
+					"Streaming replicas can not be combined with unlogged tables, not readable on replicas");
+
+		boolean startFromImageCache = false;
+		if (imageCache)
+		{
+			imageCacheScope = createImageCacheScope();
+			imageCacheKey = createImageCacheKey(imageCacheScope);
+			startFromImageCache = imageCacheExists();
+
+			if (startFromImageCache)
+			{
+				logger.info("Starting from migration image cache '{}:{}'", IMAGE_CACHE_REPOSITORY, imageCacheKey);
+
+				setDockerImageName(IMAGE_CACHE_REPOSITORY + ":" + imageCacheKey);
+
+				// initdb not executed, database ready message only logged once
+				waitingFor(new LogMessageWaitStrategy()
+						.withRegEx(".*database system is ready to accept connections.*\\s").withTimes(1)
+						.withStartupTimeout(Duration.ofSeconds(60)));
+			}
+		}
+
 		super.starting(description);
 
 		try
@@ -121,6 +342,40 @@ public class PostgreSqlContainerLiquibaseTemplateClassRule
 			throw new RuntimeException(e);
 		}
 
+		if (!startFromImageCache)
+			recreateDatabase();
+
+		try
+		{
+			testDataSource = createTestDataSource();
+			testDataSource.start();
+		}
+		catch (SQLException e)
+		{
+			logger.warn("Error while connecting to database '{}': {}", getDatabaseName(), e.getMessage());
+			throw new RuntimeException(e);
+		}
+
+		if (!startFromImageCache)
+		{
+			migrateDatabase();
+
+			if (UnloggedTables.isEnabled(unloggedTables))
+				UnloggedTables.convert(testDataSource, getDatabaseName());
+
+			if (createTemplate)
+				createTemplateDatabase();
+
+			if (imageCache)
+				createImageCache();
+		}
+
+		if (replicaCount > 0)
+			startReplicas();
+	}
+
+	private void recreateDatabase()
+	{
 		try (Connection connection = rootDataSource.getConnection())
 		{
 			try (PreparedStatement statement = connection.prepareStatement(
@@ -177,66 +432,19 @@ public class PostgreSqlContainerLiquibaseTemplateClassRule
 			logger.warn("Error while connecting to root database '{}': {}", super.getDatabaseName(), e.getMessage());
 			throw new RuntimeException(e);
 		}
+	}
 
+	private void migrateDatabase()
+	{
 		try
 		{
-			testDataSource = createTestDataSource();
-			testDataSource.start();
-		}
-		catch (SQLException e)
-		{
-			logger.warn("Error while connecting to database '{}': {}", getDatabaseName(), e.getMessage());
-			throw new RuntimeException(e);
-		}
-
-		try
-		{
-			Scope.child(Scope.Attr.ui, new LoggerUIService(), () ->
-			{
-				try (Connection liquibaseConnection = testDataSource.getConnection())
-				{
-					liquibaseConnection.setReadOnly(false);
-
-					Database database = DatabaseFactory.getInstance()
-							.findCorrectDatabaseImplementation(new JdbcConnection(liquibaseConnection));
-
-					ChangeLogParameters changeLogParameters = new ChangeLogParameters(database);
-					this.changeLogParameters.forEach(changeLogParameters::set);
-					ByteArrayOutputStream output = new ByteArrayOutputStream();
-
-					CommandScope updateCommand = new CommandScope(UpdateCommandStep.COMMAND_NAME);
-					updateCommand.addArgumentValue(DbUrlConnectionCommandStep.DATABASE_ARG, database);
-					updateCommand.addArgumentValue(UpdateCommandStep.CHANGELOG_FILE_ARG, changeLogFile);
-					updateCommand.addArgumentValue(UpdateCommandStep.CONTEXTS_ARG, new Contexts().toString());
-					updateCommand.addArgumentValue(UpdateCommandStep.LABEL_FILTER_ARG,
-							new LabelExpression().getOriginalString());
-					updateCommand.addArgumentValue(DatabaseChangelogCommandStep.CHANGELOG_PARAMETERS,
-							changeLogParameters);
-					updateCommand.setOutput(output);
-
-					logger.info("Executing DB migration ...");
-					updateCommand.execute();
-
-					Arrays.stream(output.toString().split("[\r\n]+")).filter(row -> !row.isBlank())
-							.forEach(row -> logger.debug("{}", row));
-					logger.info("Executing DB migration [Done]");
-				}
-				catch (Exception e)
-				{
-					logger.warn("Error while runnig liquibase change-log: {} - {}", e.getClass().getName(),
-							e.getMessage());
-					throw e;
-				}
-			});
+			LiquibaseMigrator.migrate(testDataSource, changeLogFile, changeLogParameters);
 		}
 		catch (Exception e)
 		{
 			logger.warn("Unable to execute database migration: {} - {}", e, getClass().getName(), e.getMessage());
 			throw new RuntimeException(e);
 		}
-
-		if (createTemplate)
-			createTemplateDatabase();
 	}
 
 	public final void createTemplateDatabase()
@@ -307,6 +515,259 @@ public class PostgreSqlContainerLiquibaseTemplateClassRule
 		}
 	}
 
+	private String createImageCacheScope()
+	{
+		MessageDigest digest = createSha256Digest();
+
+		update(digest, getDockerImageName(), getUsername(), getPassword(), getRootDatabaseName(), getDatabaseName(),
+				templateDatabaseName, String.valueOf(createTemplate),
+				String.valueOf(UnloggedTables.isEnabled(unloggedTables)), changeLogFile);
+		new TreeMap<>(changeLogParameters).forEach((key, value) -> update(digest, key, value));
+
+		return toHex(digest.digest());
+	}
+
+	private String createImageCacheKey(String scope)
+	{
+		MessageDigest digest = createSha256Digest();
+		update(digest, scope);
+
+		try
+		{
+			Database database = new PostgresDatabase();
+			ChangeLogParameters changeLogParameters = new ChangeLogParameters(database);
+			this.changeLogParameters.forEach(changeLogParameters::set);
+
+			ResourceAccessor resourceAccessor = new ClassLoaderResourceAccessor();
+			DatabaseChangeLog changeLog = ChangeLogParserFactory.getInstance()
+					.getParser(changeLogFile, resourceAccessor)
+					.parse(changeLogFile, changeLogParameters, resourceAccessor);
+
+			for (ChangeSet changeSet : changeLog.getChangeSets())
+				update(digest, changeSet.toString(false),
+						changeSet.generateCheckSum(ChecksumVersion.latest()).toString());
+		}
+		catch (Exception e)
+		{
+			logger.warn("Error while computing liquibase change-log checksum: {} - {}", e.getClass().getName(),
+					e.getMessage());
+			throw new RuntimeException(e);
+		}
+
+		return toHex(digest.digest());
+	}
+
+	private static MessageDigest createSha256Digest()
+	{
+		try
+		{
+			return MessageDigest.getInstance("SHA-256");
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static void update(MessageDigest digest, String... values)
+	{
+		for (String value : values)
+		{
+			digest.update(String.valueOf(value).getBytes(StandardCharsets.UTF_8));
+			digest.update((byte) 0);
+		}
+	}
+
+	private static String toHex(byte[] digest)
+	{
+		StringBuilder b = new StringBuilder();
+		for (int i = 0; i < 8; i++)
+			b.append(String.format("%02x", digest[i]));
+
+		return b.toString();
+	}
+
+	/**
+	 * @return key of the migration image cache, <code>null</code> if not enabled or before the container was started
+	 */
+	String getImageCacheKey()
+	{
+		return imageCacheKey;
+	}
+
+	private boolean imageCacheExists()
+	{
+		try
+		{
+			getDockerClient().inspectImageCmd(IMAGE_CACHE_REPOSITORY + ":" + imageCacheKey).exec();
+			return true;
+		}
+		catch (NotFoundException e)
+		{
+			return false;
+		}
+	}
+
+	private void createImageCache()
+	{
+		logger.info("Creating migration image cache '{}:{}' ...", IMAGE_CACHE_REPOSITORY, imageCacheKey);
+
+		try (Connection connection = rootDataSource.getConnection();
+				PreparedStatement statement = connection.prepareStatement("CHECKPOINT"))
+		{
+			logger.debug("Executing: {}", statement.toString());
+			statement.execute();
+		}
+		catch (SQLException e)
+		{
+			logger.warn("Error while executing checkpoint: {}", e.getMessage());
+			throw new RuntimeException(e);
+		}
+
+		// overriding the session id label, testcontainers resource reaper would remove the image otherwise
+		Map<String, String> labels = new HashMap<>();
+		labels.put(DockerClientFactory.TESTCONTAINERS_SESSION_ID_LABEL, "");
+		labels.put(IMAGE_CACHE_SCOPE_LABEL, imageCacheScope);
+
+		getDockerClient().commitCmd(getContainerId()).withRepository(IMAGE_CACHE_REPOSITORY).withTag(imageCacheKey)
+				.withLabels(labels).exec();
+
+		logger.info("Creating migration image cache '{}:{}' [Done]", IMAGE_CACHE_REPOSITORY, imageCacheKey);
+
+		removeStaleImageCaches();
+	}
+
+	private void removeStaleImageCaches()
+	{
+		String currentImage = IMAGE_CACHE_REPOSITORY + ":" + imageCacheKey;
+
+		getDockerClient().listImagesCmd().withLabelFilter(Map.of(IMAGE_CACHE_SCOPE_LABEL, imageCacheScope)).exec()
+				.stream().filter(image -> image.getRepoTags() == null
+						|| !Arrays.asList(image.getRepoTags()).contains(currentImage))
+				.forEach(image ->
+				{
+					try
+					{
+						logger.info("Removing stale migration image cache {}",
+								image.getRepoTags() == null ? image.getId() : Arrays.toString(image.getRepoTags()));
+						getDockerClient().removeImageCmd(image.getId()).withForce(true).exec();
+					}
+					catch (RuntimeException e)
+					{
+						logger.warn("Error while removing stale migration image cache {}: {}", image.getId(),
+								e.getMessage());
+					}
+				});
+	}
+
+	private void startReplicas()
+	{
+		try (Connection connection = rootDataSource.getConnection())
+		{
+			String hbaFile;
+			try (PreparedStatement statement = connection.prepareStatement("SHOW hba_file");
+					ResultSet result = statement.executeQuery())
+			{
+				result.next();
+				hbaFile = result.getString(1);
+			}
+
+			ExecResult result = execInContainer("sh", "-c",
+					"echo 'host replication all all md5' >> '" + hbaFile + "'");
+			if (result.getExitCode() != 0)
+				throw new RuntimeException("Unable to enable replication connections: " + result.getStderr());
+
+			try (PreparedStatement statement = connection.prepareStatement("SELECT pg_reload_conf()"))
+			{
+				logger.debug("Executing: {}", statement.toString());
+				statement.execute();
+			}
+		}
+		catch (SQLException | IOException e)
+		{
+			logger.warn("Error while enabling replication connections: {}", e.getMessage());
+			throw new RuntimeException(e);
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		}
+
+		for (int i = 0; i < replicaCount; i++)
+		{
+			logger.info("Starting streaming replica {} ...", i);
+
+			StreamingReplica replica = new StreamingReplica(DockerImageName.parse(getDockerImageName()),
+					replicaNetwork, REPLICA_NETWORK_ALIAS_PREFIX + i, PRIMARY_NETWORK_ALIAS, getUsername(),
+					getPassword(), getRootDatabaseName(), getDatabaseName(), testDataSourceConfig);
+			replicas.add(replica);
+			replica.start();
+
+			logger.info("Starting streaming replica {} [Done]", i);
+		}
+	}
+
+	/**
+	 * Waits until all streaming replicas replayed the WAL written by the PostgreSQL container up to now, e.g. after the
+	 * test database was recreated by {@link PostgresTemplateRule}. Waits at most 30 seconds.
+	 * 
+	 * @see #awaitReplicas(Duration)
+	 */
+	public void awaitReplicas()
+	{
+		awaitReplicas(Duration.ofSeconds(30));
+	}
+
+	/**
+	 * Waits until all streaming replicas replayed the WAL written by the PostgreSQL container up to now.
+	 * 
+	 * @param timeout
+	 *            not <code>null</code>
+	 * @throws IllegalStateException
+	 *             if a replica did not catch up within the given timeout
+	 */
+	public void awaitReplicas(Duration timeout)
+	{
+		if (replicas.isEmpty())
+			return;
+
+		try
+		{
+			String lsn;
+			try (Connection connection = rootDataSource.getConnection();
+					PreparedStatement statement = connection.prepareStatement("SELECT pg_current_wal_lsn()::text");
+					ResultSet result = statement.executeQuery())
+			{
+				result.next();
+				lsn = result.getString(1);
+			}
+
+			long deadline = System.nanoTime() + timeout.toNanos();
+			for (StreamingReplica replica : replicas)
+			{
+				while (!replica.isReplayed(lsn))
+				{
+					if (System.nanoTime() > deadline)
+						throw new IllegalStateException(
+								"Replica did not replay WAL up to " + lsn + " within " + timeout);
+
+					Thread.sleep(10);
+				}
+			}
+		}
+		catch (SQLException e)
+		{
+			logger.warn("Error while waiting for replicas: {}", e.getMessage());
+			throw new RuntimeException(e);
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		}
+	}
+
 	/**
 	 * @return root database name of the PostgreSQL container
 	 */
@@ -332,6 +793,7 @@ public class PostgreSqlContainerLiquibaseTemplateClassRule
 	 * 
 	 * @see BasicDataSource#setDefaultReadOnly(Boolean)
 	 */
+	@Override
 	public BasicDataSource getTestDataSource()
 	{
 		return testDataSource;
@@ -343,6 +805,55 @@ public class PostgreSqlContainerLiquibaseTemplateClassRule
 		return rootDataSource;
 	}
 
+	/**
+	 * @return read-only connection to the test database on the first streaming replica, <code>null</code> if no
+	 *         replicas configured
+	 * 
+	 * @see #withStreamingReplicas(int)
+	 */
+	public BasicDataSource getReplicaDataSource()
+	{
+		return replicas.isEmpty() ? null : replicas.get(0).getTestDataSource();
+	}
+
+	/**
+	 * @return read-only connections to the test database on all streaming replicas, empty if no replicas configured
+	 * 
+	 * @see #withStreamingReplicas(int)
+	 */
+	public List<BasicDataSource> getReplicaDataSources()
+	{
+		return replicas.stream().map(StreamingReplica::getTestDataSource).collect(Collectors.toList());
+	}
+
+	/**
+	 * @return connections to the test database on the primary and all streaming replicas
+	 */
+	@Override
+	public List<BasicDataSource> getTestDataSources()
+	{
+		List<BasicDataSource> dataSources = new ArrayList<>();
+		if (testDataSource != null)
+			dataSources.add(testDataSource);
+		dataSources.addAll(getReplicaDataSources());
+		return dataSources;
+	}
+
+	@Override
+	public void stop()
+	{
+		ResetState.remove(this);
+
+		replicas.forEach(StreamingReplica::stop);
+		replicas.clear();
+
+		super.stop();
+
+		// network recreated on next use if the rule is started again
+		if (replicaNetwork != null)
+			replicaNetwork.close();
+	}
+
 	@Override
 	@Deprecated
 	protected void succeeded(Description description)
@@ -3,19 +3,41 @@ package de.hsheilbronn.mi.utils.test;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.regex.Pattern;
 
+import org.apache.commons.dbcp2.BasicDataSource;
 import org.junit.ClassRule;
 import org.junit.Rule;
 import org.junit.rules.ExternalResource;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * Terminates connections on the PostgreSQL server to the configured database via <i>pg_terminate_backend</i>, drops the
  * configured database and recreates it base on the configured database template. Use as test {@link Rule} in
- * combination with test {@link ClassRule} {@link PostgreSqlContainerLiquibaseTemplateClassRule} or
- * {@link ExternalPostgreSqlLiquibaseTemplateClassRule}. This rule executes after test success or failure.
- * 
+ * combination with test {@link ClassRule} {@link PostgreSqlContainerLiquibaseTemplateClassRule},
+ * {@link LocalPostgreSqlLiquibaseTemplateClassRule} or {@link ExternalPostgreSqlLiquibaseTemplateClassRule}. This rule
+ * executes after test success or failure.
+ * <p>
+ * Within a test the current state of the test database can be saved via {@link #checkpoint(String)} and restored via
+ * {@link #restore(String)}, checkpoint databases are dropped after the test.
+ * <p>
+ * Connections to the test database are terminated by a reset, a checkpoint or a restore. The pools of
+ * {@link TemplateClassRule#getTestDataSources()} are closed beforehand and started again afterwards, connections
+ * borrowed by the test while the database is recreated are not usable anymore.
+ * <p>
+ * By default the test database is recreated after every test, see {@link ResetGranularity} and {@link DatabaseReset}
+ * to recreate less often, e.g. for read-only tests. The test database is always recreated after a failed test.
+ * Resets are counted per test class, classes with skipped resets are logged with the estimated time saved when the
+ * class rule ends.
+ *
  * @see TemplateClassRule#getRootDataSource()
  * @see TemplateClassRule#getDatabaseName()
  * @see TemplateClassRule#getTemplateDatabaseName()
@@ -24,62 +46,429 @@ public class PostgresTemplateRule extends ExternalResource
 {
 	private static final Logger logger = LoggerFactory.getLogger(PostgresTemplateRule.class);
 
+	private static final Pattern CHECKPOINT_NAME_PATTERN = Pattern.compile("[a-z0-9_]+");
+	private static final int MAX_DATABASE_NAME_LENGTH = 63;
+
 	private final TemplateClassRule classRule;
+	private final Set<String> checkpoints = new LinkedHashSet<>();
+
+	private ResetGranularity granularity = ResetGranularity.AFTER_EACH_TEST;
+	private int everyNTests = 1;
+	private boolean dirty;
+	private Description description;
 
 	public PostgresTemplateRule(TemplateClassRule classRule)
 	{
 		this.classRule = classRule;
 	}
 
+	/**
+	 * @param granularity
+	 *            not <code>null</code>, overridden by {@link DatabaseReset} annotations on the test class
+	 * @return this
+	 * @see #withResetEvery(int)
+	 */
+	public PostgresTemplateRule withResetGranularity(ResetGranularity granularity)
+	{
+		this.granularity = Objects.requireNonNull(granularity, "granularity");
+		return this;
+	}
+
+	/**
+	 * Configures {@link ResetGranularity#EVERY_N_TESTS}.
+	 *
+	 * @param n
+	 *            &gt; 0
+	 * @return this
+	 */
+	public PostgresTemplateRule withResetEvery(int n)
+	{
+		if (n <= 0)
+			throw new IllegalArgumentException("n <= 0");
+
+		this.granularity = ResetGranularity.EVERY_N_TESTS;
+		this.everyNTests = n;
+		return this;
+	}
+
+	/**
+	 * Forces the test database to be recreated after the current test, independent of the configured
+	 * {@link ResetGranularity}.
+	 */
+	public void markDirty()
+	{
+		dirty = true;
+	}
+
+	@Override
+	public Statement apply(Statement base, Description description)
+	{
+		this.description = description;
+
+		return super.apply(new Statement()
+		{
+			@Override
+			public void evaluate() throws Throwable
+			{
+				try
+				{
+					base.evaluate();
+				}
+				catch (Throwable e)
+				{
+					// state of the test database unknown
+					markDirty();
+					throw e;
+				}
+			}
+		}, description);
+	}
+
+	private String getTestClassName()
+	{
+		return description == null ? "" : description.getClassName();
+	}
+
+	private boolean isResetRequired(int testsSinceReset)
+	{
+		if (dirty)
+			return true;
+
+		DatabaseReset annotation = description == null || description.getTestClass() == null ? null
+				: description.getTestClass().getAnnotation(DatabaseReset.class);
+		ResetGranularity granularity = annotation == null ? this.granularity : annotation.value();
+		int everyNTests = annotation == null ? this.everyNTests : annotation.everyNTests();
+
+		switch (granularity)
+		{
+			case AFTER_EACH_TEST:
+				return true;
+			case EVERY_N_TESTS:
+				return testsSinceReset >= everyNTests;
+			case PER_CLASS:
+			case ON_DEMAND:
+			default:
+				return false;
+		}
+	}
+
+	@Override
+	protected void before()
+	{
+		ResetState state = ResetState.of(classRule);
+		if (state.isResetRequiredBefore(getTestClassName()))
+		{
+			logger.debug("Database '{}' used by previous test class, recreating", classRule.getDatabaseName());
+
+			try (Connection connection = classRule.getRootDataSource().getConnection())
+			{
+				recreateDatabase(connection, state);
+			}
+			catch (SQLException e)
+			{
+				logger.warn("Error while connecting to database '{}': {}", classRule.getDatabaseName(),
+						e.getMessage());
+				throw new RuntimeException(e);
+			}
+		}
+	}
+
 	@Override
 	protected void after()
 	{
+		ResetState state = ResetState.of(classRule);
+		int testsSinceReset = state.testFinished(getTestClassName());
+
 		try (Connection connection = classRule.getRootDataSource().getConnection())
 		{
-			try (PreparedStatement statement = connection.prepareStatement(
-					"SELECT pg_terminate_backend(pg_stat_activity.pid) FROM pg_stat_activity WHERE datname = ?"))
+			dropCheckpoints(connection);
+
+			if (isResetRequired(testsSinceReset))
+				recreateDatabase(connection, state);
+			else
 			{
-				statement.setString(1, classRule.getDatabaseName());
+				logger.debug("Database '{}' not recreated, {} tests since last reset", classRule.getDatabaseName(),
+						testsSinceReset);
+				state.resetSkipped(getTestClassName());
+			}
+		}
+		catch (SQLException e)
+		{
+			logger.warn("Error while connecting to database '{}': {}", classRule.getDatabaseName(), e.getMessage());
+			throw new RuntimeException(e);
+		}
+		finally
+		{
+			dirty = false;
+		}
+	}
 
-				logger.debug("Executing: {}", statement.toString());
-				statement.execute();
+	private void recreateDatabase(Connection connection, ResetState state)
+	{
+		long start = System.nanoTime();
+
+		List<BasicDataSource> testDataSources = closeTestDataSources();
+		terminateBackends(connection, classRule.getDatabaseName());
+
+		try (PreparedStatement statement = connection
+				.prepareStatement("DROP DATABASE " + classRule.getDatabaseName()))
+		{
+			logger.debug("Executing: {}", statement.toString());
+			statement.execute();
+		}
+		catch (SQLException e)
+		{
+			logger.warn("Error while dropping database '{}': {}", classRule.getDatabaseName(), e.getMessage());
+			throw new RuntimeException(e);
+		}
+
+		try (PreparedStatement statement = connection.prepareStatement("CREATE DATABASE "
+				+ classRule.getDatabaseName() + " TEMPLATE " + classRule.getTemplateDatabaseName()))
+		{
+			logger.debug("Executing: {}", statement.toString());
+			statement.execute();
+		}
+		catch (SQLException e)
+		{
+			logger.warn("Error while creating database '{}' from template '{}'", classRule.getDatabaseName(),
+					e.getMessage());
+			throw new RuntimeException(e);
+		}
+
+		startTestDataSources(testDataSources);
+
+		state.resetExecuted(getTestClassName(), System.nanoTime() - start);
+	}
+
+	/**
+	 * Pooled connections to the test database are dead after <i>pg_terminate_backend</i>, not detected without
+	 * validation on borrow, see {@link DataSourceConfig.ValidationPolicy#WHILE_IDLE} and
+	 * {@link DataSourceConfig.ValidationPolicy#NONE}. Pools are closed before connections are terminated, the evictor
+	 * would otherwise open new connections to keep <i>minIdle</i> and dropping the database fails.
+	 *
+	 * @return pools closed by this method
+	 */
+	private List<BasicDataSource> closeTestDataSources()
+	{
+		List<BasicDataSource> closed = new ArrayList<>();
+		for (BasicDataSource testDataSource : classRule.getTestDataSources())
+		{
+			if (testDataSource.isClosed())
+				continue;
+
+			try
+			{
+				testDataSource.close();
+				closed.add(testDataSource);
 			}
 			catch (SQLException e)
 			{
-				logger.warn("Error while terminating backend for '{}': {}", classRule.getDatabaseName(),
+				logger.warn("Error while closing data source for database '{}': {}", classRule.getDatabaseName(),
 						e.getMessage());
 				throw new RuntimeException(e);
 			}
+		}
 
-			try (PreparedStatement statement = connection
-					.prepareStatement("DROP DATABASE " + classRule.getDatabaseName()))
+		return closed;
+	}
+
+	/**
+	 * Starting the pools also recreates the initial connections.
+	 *
+	 * @param testDataSources
+	 *            pools closed via {@link #closeTestDataSources()}
+	 */
+	private void startTestDataSources(List<BasicDataSource> testDataSources)
+	{
+		for (BasicDataSource testDataSource : testDataSources)
+		{
+			try
 			{
-				logger.debug("Executing: {}", statement.toString());
-				statement.execute();
+				testDataSource.start();
 			}
 			catch (SQLException e)
 			{
-				logger.warn("Error while dropping database '{}': {}", classRule.getDatabaseName(), e.getMessage());
+				logger.warn("Error while starting data source for database '{}': {}", classRule.getDatabaseName(),
+						e.getMessage());
 				throw new RuntimeException(e);
 			}
+		}
+	}
+
+	private void terminateBackends(Connection connection, String databaseName)
+	{
+		try (PreparedStatement statement = connection.prepareStatement(
+				"SELECT pg_terminate_backend(pg_stat_activity.pid) FROM pg_stat_activity WHERE datname = ?"))
+		{
+			statement.setString(1, databaseName);
+
+			logger.debug("Executing: {}", statement.toString());
+			statement.execute();
+		}
+		catch (SQLException e)
+		{
+			logger.warn("Error while terminating backend for '{}': {}", databaseName, e.getMessage());
+			throw new RuntimeException(e);
+		}
+	}
 
-			try (PreparedStatement statement = connection.prepareStatement("CREATE DATABASE "
-					+ classRule.getDatabaseName() + " TEMPLATE " + classRule.getTemplateDatabaseName()))
+	private void dropCheckpoints(Connection connection)
+	{
+		for (String name : checkpoints)
+		{
+			try (PreparedStatement statement = connection
+					.prepareStatement("DROP DATABASE IF EXISTS " + getCheckpointDatabaseName(name)))
 			{
 				logger.debug("Executing: {}", statement.toString());
 				statement.execute();
 			}
 			catch (SQLException e)
 			{
-				logger.warn("Error while creating database '{}' from template '{}'", classRule.getDatabaseName(),
+				logger.warn("Error while dropping checkpoint database '{}': {}", getCheckpointDatabaseName(name),
 						e.getMessage());
 				throw new RuntimeException(e);
 			}
 		}
+
+		checkpoints.clear();
+	}
+
+	/**
+	 * @param name
+	 *            not <code>null</code>, lower case letters, digits and underscores
+	 * @return name of the database storing the checkpoint
+	 */
+	public String getCheckpointDatabaseName(String name)
+	{
+		Objects.requireNonNull(name, "name");
+		if (!CHECKPOINT_NAME_PATTERN.matcher(name).matches())
+			throw new IllegalArgumentException(
+					"Checkpoint name '" + name + "' not matching " + CHECKPOINT_NAME_PATTERN.pattern());
+
+		String databaseName = classRule.getDatabaseName() + "_cp_" + name;
+		if (databaseName.length() > MAX_DATABASE_NAME_LENGTH)
+			throw new IllegalArgumentException("Checkpoint database name '" + databaseName + "' longer than "
+					+ MAX_DATABASE_NAME_LENGTH + " characters");
+
+		return databaseName;
+	}
+
+	/**
+	 * Saves the current state of the test database by creating a checkpoint database with the test database as
+	 * template. Connections to the test database are terminated, an existing checkpoint with the same name is
+	 * replaced.
+	 *
+	 * @param name
+	 *            not <code>null</code>, lower case letters, digits and underscores
+	 */
+	public void checkpoint(String name)
+	{
+		String checkpointDatabaseName = getCheckpointDatabaseName(name);
+
+		try (Connection connection = classRule.getRootDataSource().getConnection())
+		{
+			logger.info("Creating checkpoint '{}' of database '{}'", name, classRule.getDatabaseName());
+
+			execute(connection, "DROP DATABASE IF EXISTS " + checkpointDatabaseName);
+
+			List<BasicDataSource> testDataSources = closeTestDataSources();
+			terminateBackends(connection, classRule.getDatabaseName());
+			execute(connection,
+					"CREATE DATABASE " + checkpointDatabaseName + " TEMPLATE " + classRule.getDatabaseName());
+
+			checkpoints.add(name);
+			startTestDataSources(testDataSources);
+		}
+		catch (SQLException e)
+		{
+			logger.warn("Error while creating checkpoint '{}' of database '{}': {}", name,
+					classRule.getDatabaseName(), e.getMessage());
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Restores the test database to the state saved via {@link #checkpoint(String)}. The checkpoint is copied and the
+	 * copy swapped in for the test database via rename, the checkpoint can be restored multiple times. Connections to
+	 * the test database are terminated, the test database is recreated after the test.
+	 *
+	 * @param name
+	 *            not <code>null</code>, name of an existing checkpoint
+	 * @throws IllegalArgumentException
+	 *             if no checkpoint with the given name was created within the current test or the name of the
+	 *             temporary <code>&lt;database-name&gt;_restore</code> database is longer than 63 characters
+	 */
+	public void restore(String name)
+	{
+		if (!checkpoints.contains(name))
+			throw new IllegalArgumentException("Checkpoint '" + name + "' not found");
+
+		String checkpointDatabaseName = getCheckpointDatabaseName(name);
+		String restoreDatabaseName = getRestoreDatabaseName();
+
+		try (Connection connection = classRule.getRootDataSource().getConnection())
+		{
+			logger.info("Restoring checkpoint '{}' of database '{}'", name, classRule.getDatabaseName());
+
+			// state of the test database unknown if the swap fails
+			markDirty();
+
+			try
+			{
+				execute(connection, "DROP DATABASE IF EXISTS " + restoreDatabaseName);
+				execute(connection, "CREATE DATABASE " + restoreDatabaseName + " TEMPLATE " + checkpointDatabaseName);
+
+				List<BasicDataSource> testDataSources = closeTestDataSources();
+				terminateBackends(connection, classRule.getDatabaseName());
+				execute(connection, "DROP DATABASE " + classRule.getDatabaseName());
+				execute(connection,
+						"ALTER DATABASE " + restoreDatabaseName + " RENAME TO " + classRule.getDatabaseName());
+
+				startTestDataSources(testDataSources);
+			}
+			finally
+			{
+				// not existing after a successful swap
+				dropRestoreDatabase(connection, restoreDatabaseName);
+			}
+		}
 		catch (SQLException e)
 		{
-			logger.warn("Error while connecting to database '{}': {}", classRule.getDatabaseName(), e.getMessage());
+			logger.warn("Error while restoring checkpoint '{}' of database '{}': {}", name,
+					classRule.getDatabaseName(), e.getMessage());
 			throw new RuntimeException(e);
 		}
 	}
+
+	private String getRestoreDatabaseName()
+	{
+		String databaseName = classRule.getDatabaseName() + "_restore";
+		if (databaseName.length() > MAX_DATABASE_NAME_LENGTH)
+			throw new IllegalArgumentException("Restore database name '" + databaseName + "' longer than "
+					+ MAX_DATABASE_NAME_LENGTH + " characters");
+
+		return databaseName;
+	}
+
+	private void dropRestoreDatabase(Connection connection, String restoreDatabaseName)
+	{
+		try
+		{
+			execute(connection, "DROP DATABASE IF EXISTS " + restoreDatabaseName);
+		}
+		catch (SQLException e)
+		{
+			// not thrown, would hide the exception of the failed swap
+			logger.warn("Error while dropping restore database '{}': {}", restoreDatabaseName, e.getMessage());
+		}
+	}
+
+	private void execute(Connection connection, String sql) throws SQLException
+	{
+		try (PreparedStatement statement = connection.prepareStatement(sql))
+		{
+			logger.debug("Executing: {}", statement.toString());
+			statement.execute();
+		}
+	}
 }
@@ -0,0 +1,300 @@
+package de.hsheilbronn.mi.utils.test;
+
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.rules.TestRule;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Watches the test database while a test is running. If the test does not finish within the configured timeout,
+ * <i>pg_stat_activity</i> with wait events and blocking PIDs and <i>pg_locks</i> for the test database are queried
+ * via the root data source and logged. The test fails with a {@link TimeoutException} containing the snapshot after it
+ * finished. Use as test {@link Rule} in combination with a {@link ClassRule} implementing {@link TemplateClassRule}.
+ * <p>
+ * By default the hanging test is ended after the snapshot: active backends of the test database are canceled via
+ * <i>pg_cancel_backend</i> and the test thread is interrupted. With {@link #withCancelBlockingBackends()} only the
+ * backends blocking others are canceled and the test continues. With {@link #withSnapshotOnly()} nothing is canceled,
+ * the snapshot does not end the hang and the test only fails once it finishes by itself.
+ * <p>
+ * Blocking backends <i>idle in transaction</i>, e.g. from leaked connections, are terminated via
+ * <i>pg_terminate_backend</i>, active blocking backends are canceled via <i>pg_cancel_backend</i>.
+ */
+public class PostgresWatchdogRule implements TestRule
+{
+	private static final Logger logger = LoggerFactory.getLogger(PostgresWatchdogRule.class);
+
+	private final TemplateClassRule classRule;
+	private final Duration timeout;
+
+	private boolean cancelBlockingBackends;
+	private boolean snapshotOnly;
+
+	/**
+	 * @param classRule
+	 *            not <code>null</code>
+	 * @param timeout
+	 *            not <code>null</code>, not negative
+	 */
+	public PostgresWatchdogRule(TemplateClassRule classRule, Duration timeout)
+	{
+		this.classRule = Objects.requireNonNull(classRule, "classRule");
+		this.timeout = Objects.requireNonNull(timeout, "timeout");
+
+		if (timeout.isNegative())
+			throw new IllegalArgumentException("timeout negative");
+	}
+
+	/**
+	 * Cancel or terminate backends blocking other backends of the test database when the timeout is reached, instead
+	 * of canceling the test.
+	 *
+	 * @return this
+	 */
+	public PostgresWatchdogRule withCancelBlockingBackends()
+	{
+		cancelBlockingBackends = true;
+		snapshotOnly = false;
+		return this;
+	}
+
+	/**
+	 * Only take the snapshot when the timeout is reached, neither backends nor the test are canceled. A test hanging
+	 * forever is not ended by this rule.
+	 *
+	 * @return this
+	 */
+	public PostgresWatchdogRule withSnapshotOnly()
+	{
+		snapshotOnly = true;
+		cancelBlockingBackends = false;
+		return this;
+	}
+
+	@Override
+	public Statement apply(Statement base, Description description)
+	{
+		return new Statement()
+		{
+			@Override
+			public void evaluate() throws Throwable
+			{
+				ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r ->
+				{
+					Thread thread = new Thread(r, "postgres-watchdog-" + description.getMethodName());
+					thread.setDaemon(true);
+					return thread;
+				});
+
+				Thread testThread = Thread.currentThread();
+				AtomicBoolean interruptible = new AtomicBoolean(true);
+
+				StringBuilder snapshot = new StringBuilder();
+				executor.schedule(() -> onTimeout(description, snapshot, testThread, interruptible), timeout.toMillis(),
+						TimeUnit.MILLISECONDS);
+
+				Throwable testError = null;
+				try
+				{
+					base.evaluate();
+				}
+				catch (Throwable e)
+				{
+					testError = e;
+				}
+				finally
+				{
+					// test thread not interrupted after this point, interrupt by the watchdog cleared if not handled
+					synchronized (snapshot)
+					{
+						if (!interruptible.getAndSet(false))
+							Thread.interrupted();
+					}
+
+					executor.shutdownNow();
+					executor.awaitTermination(30, TimeUnit.SECONDS);
+				}
+
+				synchronized (snapshot)
+				{
+					if (snapshot.length() > 0)
+					{
+						TimeoutException timeoutException = new TimeoutException(
+								"Test " + description.getDisplayName() + " exceeded watchdog timeout of " + timeout
+										+ "\n" + snapshot);
+						if (testError != null)
+							timeoutException.addSuppressed(testError);
+
+						throw timeoutException;
+					}
+				}
+
+				if (testError != null)
+					throw testError;
+			}
+		};
+	}
+
+	private void onTimeout(Description description, StringBuilder snapshot, Thread testThread,
+			AtomicBoolean interruptible)
+	{
+		logger.warn("Test {} exceeded watchdog timeout of {}, taking snapshot of database '{}'",
+				description.getDisplayName(), timeout, classRule.getDatabaseName());
+
+		synchronized (snapshot)
+		{
+			try (Connection connection = classRule.getRootDataSource().getConnection())
+			{
+				Set<Integer> blockingPids = new LinkedHashSet<>();
+				appendActivity(connection, snapshot, blockingPids);
+				appendLocks(connection, snapshot);
+
+				logger.warn("Snapshot of database '{}':\n{}", classRule.getDatabaseName(), snapshot);
+
+				if (cancelBlockingBackends)
+					cancelBackends(connection, blockingPids, snapshot);
+				else if (!snapshotOnly && interruptible.getAndSet(false))
+				{
+					cancelActiveBackends(connection, snapshot);
+
+					logger.warn("Interrupting test thread '{}'", testThread.getName());
+					testThread.interrupt();
+				}
+			}
+			catch (SQLException e)
+			{
+				logger.warn("Error while taking snapshot of database '{}': {}", classRule.getDatabaseName(),
+						e.getMessage());
+				snapshot.append("Error while taking snapshot: ").append(e.getMessage()).append('\n');
+			}
+		}
+	}
+
+	private void appendActivity(Connection connection, StringBuilder snapshot, Set<Integer> blockingPids)
+			throws SQLException
+	{
+		try (PreparedStatement statement = connection.prepareStatement(
+				"SELECT pid, usename, application_name, state, wait_event_type, wait_event, pg_blocking_pids(pid), "
+						+ "now() - xact_start, now() - query_start, query FROM pg_stat_activity "
+						+ "WHERE datname = ? AND pid <> pg_backend_pid() ORDER BY pid"))
+		{
+			statement.setString(1, classRule.getDatabaseName());
+
+			logger.debug("Executing: {}", statement.toString());
+			try (ResultSet result = statement.executeQuery())
+			{
+				snapshot.append("pg_stat_activity:\n");
+				while (result.next())
+				{
+					List<Integer> blockedBy = toList(result.getArray(7));
+					blockingPids.addAll(blockedBy);
+
+					snapshot.append("  pid=").append(result.getInt(1)).append(" user=").append(result.getString(2))
+							.append(" application=").append(result.getString(3)).append(" state=")
+							.append(result.getString(4)).append(" wait_event=").append(result.getString(5))
+							.append('/').append(result.getString(6)).append(" blocked_by=").append(blockedBy)
+							.append(" xact_age=").append(result.getString(8)).append(" query_age=")
+							.append(result.getString(9)).append(" query=").append(result.getString(10)).append('\n');
+				}
+			}
+		}
+	}
+
+	private List<Integer> toList(Array array) throws SQLException
+	{
+		if (array == null)
+			return List.of();
+
+		return new ArrayList<>(Arrays.asList((Integer[]) array.getArray()));
+	}
+
+	private void appendLocks(Connection connection, StringBuilder snapshot) throws SQLException
+	{
+		try (PreparedStatement statement = connection.prepareStatement(
+				"SELECT l.pid, l.locktype, l.mode, l.granted, l.relation, l.transactionid::text, l.virtualxid "
+						+ "FROM pg_locks l JOIN pg_stat_activity a ON a.pid = l.pid "
+						+ "WHERE a.datname = ? AND l.pid <> pg_backend_pid() ORDER BY l.granted, l.pid"))
+		{
+			statement.setString(1, classRule.getDatabaseName());
+
+			logger.debug("Executing: {}", statement.toString());
+			try (ResultSet result = statement.executeQuery())
+			{
+				snapshot.append("pg_locks:\n");
+				while (result.next())
+				{
+					snapshot.append("  pid=").append(result.getInt(1)).append(" locktype=")
+							.append(result.getString(2)).append(" mode=").append(result.getString(3))
+							.append(" granted=").append(result.getBoolean(4)).append(" relation_oid=")
+							.append(result.getString(5)).append(" transactionid=").append(result.getString(6))
+							.append(" virtualxid=").append(result.getString(7)).append('\n');
+				}
+			}
+		}
+	}
+
+	private void cancelActiveBackends(Connection connection, StringBuilder snapshot) throws SQLException
+	{
+		try (PreparedStatement statement = connection.prepareStatement(
+				"SELECT pid, pg_cancel_backend(pid) FROM pg_stat_activity "
+						+ "WHERE datname = ? AND state = 'active' AND pid <> pg_backend_pid() ORDER BY pid"))
+		{
+			statement.setString(1, classRule.getDatabaseName());
+
+			logger.debug("Executing: {}", statement.toString());
+			try (ResultSet result = statement.executeQuery())
+			{
+				while (result.next())
+				{
+					logger.warn("Canceled active backend {}: {}", result.getInt(1), result.getBoolean(2));
+					snapshot.append("Canceled active backend pid=").append(result.getInt(1)).append('\n');
+				}
+			}
+		}
+	}
+
+	private void cancelBackends(Connection connection, Set<Integer> pids, StringBuilder snapshot) throws SQLException
+	{
+		for (Integer pid : pids)
+		{
+			try (PreparedStatement statement = connection.prepareStatement(
+					"SELECT CASE WHEN state LIKE 'idle in transaction%' THEN pg_terminate_backend(pid) "
+							+ "ELSE pg_cancel_backend(pid) END, state FROM pg_stat_activity WHERE pid = ?"))
+			{
+				statement.setInt(1, pid);
+
+				logger.debug("Executing: {}", statement.toString());
+				try (ResultSet result = statement.executeQuery())
+				{
+					if (result.next())
+					{
+						logger.warn("Canceled blocking backend {} ({}): {}", pid, result.getString(2),
+								result.getBoolean(1));
+						snapshot.append("Canceled blocking backend pid=").append(pid).append(" state=")
+								.append(result.getString(2)).append('\n');
+					}
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,35 @@
+package de.hsheilbronn.mi.utils.test;
+
+/**
+ * Defines when {@link PostgresTemplateRule} recreates the test database from the template database. Independent of the
+ * granularity the test database is recreated after a test that called {@link PostgresTemplateRule#markDirty()} and
+ * before the first test of a different test class if tests ran since the last reset.
+ *
+ * @see PostgresTemplateRule#withResetGranularity(ResetGranularity)
+ * @see DatabaseReset
+ */
+public enum ResetGranularity
+{
+	/**
+	 * Test database recreated after every test, default
+	 */
+	AFTER_EACH_TEST,
+
+	/**
+	 * Test database recreated after every <i>n</i> tests
+	 *
+	 * @see PostgresTemplateRule#withResetEvery(int)
+	 * @see DatabaseReset#everyNTests()
+	 */
+	EVERY_N_TESTS,
+
+	/**
+	 * Test database shared by all tests of a test class
+	 */
+	PER_CLASS,
+
+	/**
+	 * Test database only recreated after tests calling {@link PostgresTemplateRule#markDirty()}
+	 */
+	ON_DEMAND
+}
@@ -0,0 +1,176 @@
+package de.hsheilbronn.mi.utils.test;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reset state of the test database of one {@link TemplateClassRule}, shared by all {@link PostgresTemplateRule}
+ * instances created for the class rule. Also collects reset counts per test class, logged when the class rule ends.
+ */
+final class ResetState
+{
+	private static final Logger logger = LoggerFactory.getLogger(ResetState.class);
+
+	/**
+	 * Reset counts of one test class
+	 */
+	static final class Statistics
+	{
+		private final ResetState state;
+
+		private int tests;
+		private int resets;
+		private int skippedResets;
+
+		private Statistics(ResetState state)
+		{
+			this.state = state;
+		}
+
+		synchronized int getTests()
+		{
+			return tests;
+		}
+
+		synchronized int getResets()
+		{
+			return resets;
+		}
+
+		synchronized int getSkippedResets()
+		{
+			return skippedResets;
+		}
+
+		/**
+		 * @return skipped resets times average reset duration of all test classes using the class rule,
+		 *         {@link Duration#ZERO} if no reset executed
+		 */
+		Duration getEstimatedTimeSaved()
+		{
+			// not synchronized on this, lock order ResetState before Statistics
+			return state.getAverageResetDuration().multipliedBy(getSkippedResets());
+		}
+
+		@Override
+		public String toString()
+		{
+			return tests + " tests, " + resets + " resets, " + skippedResets + " skipped, ~"
+					+ getEstimatedTimeSaved().toMillis() + " ms saved";
+		}
+	}
+
+	// keyed by identity, class rules might implement equals and hashCode based on mutable state
+	private static final Map<TemplateClassRule, ResetState> STATES = Collections
+			.synchronizedMap(new IdentityHashMap<>());
+
+	static ResetState of(TemplateClassRule classRule)
+	{
+		return STATES.computeIfAbsent(classRule, c -> new ResetState());
+	}
+
+	/**
+	 * Drops the reset state of the given class rule and logs the reset counts of test classes with skipped resets. To
+	 * be called when the class rule ends.
+	 *
+	 * @param classRule
+	 *            not <code>null</code>
+	 */
+	static void remove(TemplateClassRule classRule)
+	{
+		ResetState state = STATES.remove(classRule);
+		if (state != null)
+			state.logStatistics();
+	}
+
+	private final Map<String, Statistics> statistics = new LinkedHashMap<>();
+
+	private String lastTestClassName;
+	private int testsSinceReset;
+	private int resets;
+	private long resetNanos;
+
+	private ResetState()
+	{
+	}
+
+	/**
+	 * @param testClassName
+	 *            not <code>null</code>
+	 * @return reset counts of the given test class
+	 */
+	synchronized Statistics statistics(String testClassName)
+	{
+		return statistics.computeIfAbsent(testClassName, c -> new Statistics(this));
+	}
+
+	/**
+	 * @return average duration of resets executed for all test classes, {@link Duration#ZERO} if no reset executed
+	 */
+	synchronized Duration getAverageResetDuration()
+	{
+		return resets == 0 ? Duration.ZERO : Duration.ofNanos(resetNanos / resets);
+	}
+
+	private synchronized void logStatistics()
+	{
+		statistics.entrySet().stream().filter(e -> e.getValue().getSkippedResets() > 0)
+				.forEach(e -> logger.info("Database resets {}: {}", e.getKey(), e.getValue()));
+	}
+
+	/**
+	 * @param testClassName
+	 *            not <code>null</code>
+	 * @return <code>true</code> if tests of a different test class ran since the last reset
+	 */
+	synchronized boolean isResetRequiredBefore(String testClassName)
+	{
+		return lastTestClassName != null && !lastTestClassName.equals(testClassName) && testsSinceReset > 0;
+	}
+
+	/**
+	 * @param testClassName
+	 *            not <code>null</code>
+	 * @return number of tests since last reset, including the finished test
+	 */
+	synchronized int testFinished(String testClassName)
+	{
+		lastTestClassName = testClassName;
+
+		Statistics statistics = statistics(testClassName);
+		synchronized (statistics)
+		{
+			statistics.tests++;
+		}
+
+		return ++testsSinceReset;
+	}
+
+	synchronized void resetExecuted(String testClassName, long nanos)
+	{
+		testsSinceReset = 0;
+		resets++;
+		resetNanos += nanos;
+
+		Statistics statistics = statistics(testClassName);
+		synchronized (statistics)
+		{
+			statistics.resets++;
+		}
+	}
+
+	synchronized void resetSkipped(String testClassName)
+	{
+		Statistics statistics = statistics(testClassName);
+		synchronized (statistics)
+		{
+			statistics.skippedResets++;
+		}
+	}
+}
@@ -0,0 +1,139 @@
+package de.hsheilbronn.mi.utils.test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+
+import org.apache.commons.dbcp2.BasicDataSource;
+import org.postgresql.Driver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.containers.Network;
+import org.testcontainers.containers.output.Slf4jLogConsumer;
+import org.testcontainers.containers.wait.strategy.Wait;
+import org.testcontainers.utility.DockerImageName;
+
+/**
+ * Hot standby PostgreSQL container, initialized via <i>pg_basebackup</i> from a primary reachable on the given docker
+ * network and streaming WAL from the primary.
+ */
+final class StreamingReplica
+{
+	private static final Logger logger = LoggerFactory.getLogger(StreamingReplica.class);
+
+	private static final String DATA_DIRECTORY = "/tmp/pgdata";
+
+	private final GenericContainer<?> container;
+	private final String rootDatabaseName;
+	private final String testDatabaseName;
+	private final String username;
+	private final String password;
+	private final DataSourceConfig testDataSourceConfig;
+
+	private BasicDataSource rootDataSource;
+	private BasicDataSource testDataSource;
+
+	@SuppressWarnings("resource")
+	StreamingReplica(DockerImageName dockerImageName, Network network, String networkAlias, String primaryHost,
+			String username, String password, String rootDatabaseName, String testDatabaseName,
+			DataSourceConfig testDataSourceConfig)
+	{
+		this.rootDatabaseName = rootDatabaseName;
+		this.testDatabaseName = testDatabaseName;
+		this.username = username;
+		this.password = password;
+		this.testDataSourceConfig = testDataSourceConfig;
+
+		String script = "until pg_basebackup -h " + primaryHost + " -p 5432 -D " + DATA_DIRECTORY
+				+ " -R -X stream; do rm -rf " + DATA_DIRECTORY + "; sleep 1; done; chmod 700 " + DATA_DIRECTORY
+				+ "; exec postgres -D " + DATA_DIRECTORY
+				+ " -c hot_standby=on -c fsync=off -c log_min_messages=NOTICE";
+
+		container = new GenericContainer<>(dockerImageName).withNetwork(network).withNetworkAliases(networkAlias)
+				.withEnv("PGUSER", username).withEnv("PGPASSWORD", password).withExposedPorts(5432)
+				.withCreateContainerCmdModifier(cmd -> cmd.withUser("postgres")).withCommand("sh", "-c", script)
+				.withLogConsumer(new Slf4jLogConsumer(logger).withPrefix(networkAlias))
+				.waitingFor(Wait.forLogMessage(".*database system is ready to accept read-only connections.*\\s", 1)
+						.withStartupTimeout(Duration.ofSeconds(60)));
+	}
+
+	void start()
+	{
+		container.start();
+
+		try
+		{
+			rootDataSource = createDataSource(rootDatabaseName, DataSourceConfig.DEFAULT);
+			rootDataSource.start();
+
+			testDataSource = createDataSource(testDatabaseName, testDataSourceConfig);
+			testDataSource.start();
+		}
+		catch (SQLException e)
+		{
+			logger.warn("Error while connecting to replica: {}", e.getMessage());
+			throw new RuntimeException(e);
+		}
+	}
+
+	private BasicDataSource createDataSource(String databaseName, DataSourceConfig config)
+	{
+		BasicDataSource dataSource = new BasicDataSource();
+		dataSource.setDriverClassName(Driver.class.getName());
+		dataSource.setUrl(
+				"jdbc:postgresql://" + container.getHost() + ":" + container.getMappedPort(5432) + "/" + databaseName);
+		dataSource.setUsername(username);
+		dataSource.setPassword(password);
+		dataSource.setDefaultReadOnly(true);
+
+		config.applyTo(dataSource);
+
+		return dataSource;
+	}
+
+	/**
+	 * @param lsn
+	 *            WAL location on the primary
+	 * @return <code>true</code> if the replica replayed WAL up to the given location
+	 * @throws SQLException
+	 */
+	boolean isReplayed(String lsn) throws SQLException
+	{
+		try (Connection connection = rootDataSource.getConnection();
+				PreparedStatement statement = connection
+						.prepareStatement("SELECT pg_last_wal_replay_lsn() >= ?::pg_lsn"))
+		{
+			statement.setString(1, lsn);
+
+			try (ResultSet result = statement.executeQuery())
+			{
+				return result.next() && result.getBoolean(1);
+			}
+		}
+	}
+
+	BasicDataSource getTestDataSource()
+	{
+		return testDataSource;
+	}
+
+	void stop()
+	{
+		try
+		{
+			if (testDataSource != null)
+				testDataSource.close();
+			if (rootDataSource != null)
+				rootDataSource.close();
+		}
+		catch (SQLException e)
+		{
+			logger.warn("Error while closing replica data sources: {}", e.getMessage());
+		}
+
+		container.stop();
+	}
+}
@@ -0,0 +1,529 @@
+package de.hsheilbronn.mi.utils.test;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+import javax.sql.DataSource;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.hsheilbronn.mi.utils.test.SyntheticDataSpec.ColumnGenerator;
+
+/**
+ * Fills tables of a database with rows according to a {@link SyntheticDataSpec}. Tables are loaded in foreign key
+ * order, rows of a table are split into fixed size chunks and streamed via <i>COPY FROM STDIN</i> on parallel
+ * connections. Each chunk uses its own {@link Random} seeded from spec seed, table and chunk index, generated data does
+ * not depend on the parallelism. Tables with <i>serial</i> or identity columns are loaded one chunk after the other,
+ * values drawn from the sequence follow the row order. Foreign key values are picked from a bounded sample of the
+ * referenced keys.
+ */
+final class SyntheticDataGenerator
+{
+	private static final Logger logger = LoggerFactory.getLogger(SyntheticDataGenerator.class);
+
+	static final int MAX_REFERENCED_KEYS = 100_000;
+
+	private static final long CHUNK_ROWS = 100_000;
+	private static final int COPY_BUFFER_SIZE = 1024 * 1024;
+
+	private static final LocalDateTime BASE_TIMESTAMP = LocalDateTime.of(2020, 1, 1, 0, 0);
+	private static final int TIMESTAMP_RANGE_SECONDS = 5 * 365 * 24 * 60 * 60;
+
+	private static final class Column
+	{
+		final String name;
+		final String dataType;
+		final Integer maxLength;
+		final boolean nullable;
+
+		Column(String name, String dataType, Integer maxLength, boolean nullable)
+		{
+			this.name = name;
+			this.dataType = dataType;
+			this.maxLength = maxLength;
+			this.nullable = nullable;
+		}
+	}
+
+	private static final class ForeignKey
+	{
+		final List<String> columns;
+		final String referencedTable;
+		final List<String> referencedColumns;
+
+		List<String[]> referencedKeys;
+
+		ForeignKey(List<String> columns, String referencedTable, List<String> referencedColumns)
+		{
+			this.columns = columns;
+			this.referencedTable = referencedTable;
+			this.referencedColumns = referencedColumns;
+		}
+	}
+
+	private static final class Table
+	{
+		final String specName;
+		final String qualifiedName;
+		final long rowCount;
+		final List<Column> columns = new ArrayList<>();
+		final List<ForeignKey> foreignKeys = new ArrayList<>();
+
+		boolean sequenceGenerated;
+
+		Table(String specName, String qualifiedName, long rowCount)
+		{
+			this.specName = specName;
+			this.qualifiedName = qualifiedName;
+			this.rowCount = rowCount;
+		}
+	}
+
+	private final DataSource dataSource;
+	private final SyntheticDataSpec spec;
+	private final int parallelism;
+
+	/**
+	 * @param dataSource
+	 *            connections to the database to fill, pool size should be at least <b>parallelism</b>
+	 * @param spec
+	 *            not <code>null</code>
+	 * @param parallelism
+	 *            &gt; 0
+	 */
+	SyntheticDataGenerator(DataSource dataSource, SyntheticDataSpec spec, int parallelism)
+	{
+		if (parallelism <= 0)
+			throw new IllegalArgumentException("parallelism <= 0");
+
+		this.dataSource = dataSource;
+		this.spec = spec;
+		this.parallelism = parallelism;
+	}
+
+	void generate() throws SQLException, InterruptedException
+	{
+		List<Table> tables = sortByForeignKeys(readTables());
+
+		ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+		ExecutorService sequentialExecutor = Executors.newSingleThreadExecutor();
+		try
+		{
+			for (Table table : tables)
+				load(table, table.sequenceGenerated ? sequentialExecutor : executor);
+		}
+		finally
+		{
+			executor.shutdownNow();
+			sequentialExecutor.shutdownNow();
+		}
+
+		try (Connection connection = dataSource.getConnection())
+		{
+			for (Table table : tables)
+			{
+				try (PreparedStatement statement = connection.prepareStatement("VACUUM ANALYZE " + table.qualifiedName))
+				{
+					logger.debug("Executing: {}", statement.toString());
+					statement.execute();
+				}
+			}
+		}
+	}
+
+	private List<Table> readTables() throws SQLException
+	{
+		List<Table> tables = new ArrayList<>();
+
+		try (Connection connection = dataSource.getConnection())
+		{
+			for (Map.Entry<String, Long> entry : spec.getRowCounts().entrySet())
+			{
+				String[] schemaAndName = entry.getKey().contains(".") ? entry.getKey().split("\\.", 2)
+						: new String[] { "public", entry.getKey() };
+				Table table = new Table(entry.getKey(), schemaAndName[0] + "." + schemaAndName[1], entry.getValue());
+				Map<String, ColumnGenerator> customGenerators = spec.getColumnGenerators(entry.getKey());
+
+				try (PreparedStatement statement = connection.prepareStatement(
+						"SELECT column_name, data_type, character_maximum_length, is_nullable = 'YES', "
+								+ "column_default LIKE 'nextval(%' OR is_identity = 'YES', is_generated <> 'NEVER' "
+								+ "FROM information_schema.columns WHERE table_schema = ? AND table_name = ? "
+								+ "ORDER BY ordinal_position"))
+				{
+					statement.setString(1, schemaAndName[0]);
+					statement.setString(2, schemaAndName[1]);
+
+					try (ResultSet result = statement.executeQuery())
+					{
+						while (result.next())
+						{
+							String name = result.getString(1);
+							boolean sequenceGenerated = result.getBoolean(5);
+							boolean generatedByDatabase = sequenceGenerated || result.getBoolean(6);
+
+							if (!generatedByDatabase || customGenerators.containsKey(name))
+								table.columns.add(new Column(name, result.getString(2),
+										(Integer) result.getObject(3), result.getBoolean(4)));
+							else if (sequenceGenerated)
+								table.sequenceGenerated = true;
+						}
+					}
+				}
+
+				if (table.columns.isEmpty())
+					throw new IllegalStateException("Table '" + table.qualifiedName + "' not found or has no columns");
+
+				try (PreparedStatement statement = connection.prepareStatement("SELECT "
+						+ "(SELECT string_agg(a.attname, ',' ORDER BY k.n) "
+						+ "FROM unnest(c.conkey) WITH ORDINALITY k(attnum, n) "
+						+ "JOIN pg_attribute a ON a.attrelid = c.conrelid AND a.attnum = k.attnum), "
+						+ "rn.nspname || '.' || r.relname, "
+						+ "(SELECT string_agg(a.attname, ',' ORDER BY k.n) "
+						+ "FROM unnest(c.confkey) WITH ORDINALITY k(attnum, n) "
+						+ "JOIN pg_attribute a ON a.attrelid = c.confrelid AND a.attnum = k.attnum) "
+						+ "FROM pg_constraint c JOIN pg_class r ON r.oid = c.confrelid "
+						+ "JOIN pg_namespace rn ON rn.oid = r.relnamespace "
+						+ "WHERE c.contype = 'f' AND c.conrelid = to_regclass(?)"))
+				{
+					statement.setString(1, table.qualifiedName);
+
+					try (ResultSet result = statement.executeQuery())
+					{
+						while (result.next())
+						{
+							table.foreignKeys.add(new ForeignKey(Arrays.asList(result.getString(1).split(",")),
+									result.getString(2), Arrays.asList(result.getString(3).split(","))));
+						}
+					}
+				}
+
+				tables.add(table);
+			}
+		}
+
+		return tables;
+	}
+
+	private List<Table> sortByForeignKeys(List<Table> tables)
+	{
+		Map<String, Table> unsorted = new LinkedHashMap<>();
+		tables.forEach(t -> unsorted.put(t.qualifiedName, t));
+
+		List<Table> sorted = new ArrayList<>();
+		while (!unsorted.isEmpty())
+		{
+			Table next = unsorted.values().stream()
+					.filter(t -> t.foreignKeys.stream().map(fk -> fk.referencedTable)
+							.noneMatch(r -> !r.equals(t.qualifiedName) && unsorted.containsKey(r)))
+					.findFirst().orElseThrow(() -> new IllegalStateException(
+							"Cyclic foreign keys between tables " + unsorted.keySet()));
+
+			unsorted.remove(next.qualifiedName);
+			sorted.add(next);
+		}
+
+		return sorted;
+	}
+
+	private void load(Table table, ExecutorService executor) throws SQLException, InterruptedException
+	{
+		logger.info("Generating {} rows for table '{}' ...", table.rowCount, table.qualifiedName);
+
+		for (ForeignKey foreignKey : table.foreignKeys)
+			foreignKey.referencedKeys = readReferencedKeys(table, foreignKey);
+
+		Map<String, ColumnGenerator> generators = new HashMap<>();
+		Map<String, ColumnGenerator> customGenerators = spec.getColumnGenerators(table.specName);
+		for (Column column : table.columns)
+			generators.put(column.name, customGenerators.containsKey(column.name)
+					? customGenerators.get(column.name)
+					: defaultGenerator(table, column));
+
+		String copySql = "COPY " + table.qualifiedName + " ("
+				+ table.columns.stream().map(c -> "\"" + c.name + "\"").collect(Collectors.joining(", "))
+				+ ") FROM STDIN";
+
+		List<Future<Void>> chunks = new ArrayList<>();
+		for (long from = 0, chunk = 0; from < table.rowCount; from += CHUNK_ROWS, chunk++)
+		{
+			long chunkFrom = from, chunkTo = Math.min(from + CHUNK_ROWS, table.rowCount);
+			Random random = new Random(spec.getSeed() * 31 + table.qualifiedName.hashCode() * 17L + chunk);
+
+			chunks.add(executor.submit(() ->
+			{
+				copyChunk(table, generators, copySql, chunkFrom, chunkTo, random);
+				return null;
+			}));
+		}
+
+		try
+		{
+			for (Future<Void> chunk : chunks)
+				chunk.get();
+		}
+		catch (ExecutionException e)
+		{
+			chunks.forEach(c -> c.cancel(true));
+
+			logger.warn("Error while generating rows for table '{}': {}", table.qualifiedName,
+					e.getCause().getMessage());
+
+			if (e.getCause() instanceof SQLException)
+				throw (SQLException) e.getCause();
+			else
+				throw new RuntimeException(e.getCause());
+		}
+
+		logger.info("Generating {} rows for table '{}' [Done]", table.rowCount, table.qualifiedName);
+	}
+
+	/**
+	 * Reads at most {@value #MAX_REFERENCED_KEYS} keys of the referenced table. Larger tables are sampled on the server
+	 * by a seeded hash of the key values, sample and order do not depend on the physical row order.
+	 */
+	private List<String[]> readReferencedKeys(Table table, ForeignKey foreignKey) throws SQLException
+	{
+		if (foreignKey.referencedTable.equals(table.qualifiedName))
+			return new ArrayList<>();
+
+		String columns = foreignKey.referencedColumns.stream().map(c -> "\"" + c + "\"::text")
+				.collect(Collectors.joining(", "));
+
+		List<String[]> keys = new ArrayList<>();
+		try (Connection connection = dataSource.getConnection())
+		{
+			long rowCount;
+			try (PreparedStatement statement = connection
+					.prepareStatement("SELECT count(*) FROM " + foreignKey.referencedTable);
+					ResultSet result = statement.executeQuery())
+			{
+				rowCount = result.next() ? result.getLong(1) : 0;
+			}
+
+			long modulus = (rowCount + MAX_REFERENCED_KEYS - 1) / MAX_REFERENCED_KEYS;
+			String sampleFilter = modulus > 1 ? " WHERE (hashtext(? || concat_ws(',', " + columns
+					+ ")) & 2147483647) % " + modulus + " = 0" : "";
+
+			try (PreparedStatement statement = connection.prepareStatement("SELECT " + columns + " FROM "
+					+ foreignKey.referencedTable + sampleFilter + " ORDER BY " + columns + " LIMIT "
+					+ MAX_REFERENCED_KEYS))
+			{
+				if (modulus > 1)
+					statement.setString(1, spec.getSeed() + ":");
+
+				try (ResultSet result = statement.executeQuery())
+				{
+					while (result.next())
+					{
+						String[] key = new String[foreignKey.referencedColumns.size()];
+						for (int i = 0; i < key.length; i++)
+							key[i] = result.getString(i + 1);
+
+						keys.add(key);
+					}
+				}
+			}
+
+			logger.debug("Referencing {} of {} rows in table '{}'", keys.size(), rowCount,
+					foreignKey.referencedTable);
+		}
+
+		return keys;
+	}
+
+	private void copyChunk(Table table, Map<String, ColumnGenerator> generators, String copySql, long from, long to,
+			Random random) throws SQLException
+	{
+		try (Connection connection = dataSource.getConnection())
+		{
+			CopyIn copyIn = connection.unwrap(PGConnection.class).getCopyAPI().copyIn(copySql);
+			try
+			{
+				StringBuilder buffer = new StringBuilder();
+				Map<String, String> values = new HashMap<>();
+
+				for (long row = from; row < to; row++)
+				{
+					values.clear();
+					for (ForeignKey foreignKey : table.foreignKeys)
+					{
+						if (!foreignKey.referencedKeys.isEmpty())
+						{
+							String[] key = foreignKey.referencedKeys
+									.get(random.nextInt(foreignKey.referencedKeys.size()));
+							for (int i = 0; i < key.length; i++)
+								values.put(foreignKey.columns.get(i), key[i]);
+						}
+						else
+						{
+							for (String column : foreignKey.columns)
+								values.put(column, null);
+						}
+					}
+
+					for (int i = 0; i < table.columns.size(); i++)
+					{
+						Column column = table.columns.get(i);
+
+						if (i > 0)
+							buffer.append('\t');
+
+						if (values.containsKey(column.name))
+							appendEscaped(buffer, values.get(column.name));
+						else
+							appendEscaped(buffer, generators.get(column.name).generate(row, random));
+					}
+					buffer.append('\n');
+
+					if (buffer.length() >= COPY_BUFFER_SIZE)
+						write(copyIn, buffer);
+				}
+
+				write(copyIn, buffer);
+				copyIn.endCopy();
+			}
+			finally
+			{
+				if (copyIn.isActive())
+					copyIn.cancelCopy();
+			}
+		}
+	}
+
+	private static void write(CopyIn copyIn, StringBuilder buffer) throws SQLException
+	{
+		byte[] bytes = buffer.toString().getBytes(StandardCharsets.UTF_8);
+		copyIn.writeToCopy(bytes, 0, bytes.length);
+		buffer.setLength(0);
+	}
+
+	private static void appendEscaped(StringBuilder buffer, String value)
+	{
+		if (value == null)
+		{
+			buffer.append("\\N");
+			return;
+		}
+
+		for (int i = 0; i < value.length(); i++)
+		{
+			char c = value.charAt(i);
+			switch (c)
+			{
+				case '\\':
+					buffer.append("\\\\");
+					break;
+				case '\t':
+					buffer.append("\\t");
+					break;
+				case '\n':
+					buffer.append("\\n");
+					break;
+				case '\r':
+					buffer.append("\\r");
+					break;
+				default:
+					buffer.append(c);
+			}
+		}
+	}
+
+	private ColumnGenerator defaultGenerator(Table table, Column column) throws SQLException
+	{
+		boolean foreignKeyColumn = table.foreignKeys.stream().anyMatch(fk -> fk.columns.contains(column.name));
+		if (foreignKeyColumn)
+		{
+			boolean missingKeys = table.foreignKeys.stream()
+					.anyMatch(fk -> fk.columns.contains(column.name) && fk.referencedKeys.isEmpty());
+			if (missingKeys && !column.nullable)
+				throw new IllegalStateException("No rows to reference for not nullable foreign key column '"
+						+ column.name + "' of table '" + table.qualifiedName + "'");
+
+			// values taken from referenced keys, see copyChunk
+			return (row, random) -> null;
+		}
+
+		switch (column.dataType)
+		{
+			case "smallint":
+				return (row, random) -> String.valueOf(row % Short.MAX_VALUE + 1);
+			case "integer":
+			case "bigint":
+				// continued after existing rows, e.g. copied from the template database
+				long maxValue = readMaxValue(table, column);
+				return (row, random) -> String.valueOf(maxValue + row + 1);
+			case "numeric":
+			case "real":
+			case "double precision":
+				return (row, random) -> String.valueOf(random.nextInt(10_000) / 100.0);
+			case "boolean":
+				return (row, random) -> String.valueOf(random.nextBoolean());
+			case "text":
+			case "character varying":
+			case "character":
+				return (row, random) -> text(row, random, column.maxLength);
+			case "uuid":
+				return (row, random) -> new UUID(random.nextLong(), row).toString();
+			case "date":
+				return (row, random) -> BASE_TIMESTAMP.toLocalDate().plusDays(random.nextInt(5 * 365)).toString();
+			case "timestamp without time zone":
+				return (row, random) -> BASE_TIMESTAMP.plusSeconds(random.nextInt(TIMESTAMP_RANGE_SECONDS)).toString();
+			case "timestamp with time zone":
+				return (row, random) -> BASE_TIMESTAMP.plusSeconds(random.nextInt(TIMESTAMP_RANGE_SECONDS))
+						.atOffset(ZoneOffset.UTC).toString();
+			case "json":
+			case "jsonb":
+				return (row, random) -> "{\"row\": " + row + "}";
+			case "bytea":
+				return (row, random) -> String.format("\\x%016x", random.nextLong());
+			default:
+				if (column.nullable)
+					return (row, random) -> null;
+				else
+					throw new IllegalStateException("No default generator for not nullable column '" + column.name
+							+ "' of type '" + column.dataType + "' in table '" + table.qualifiedName
+							+ "', configure one via SyntheticDataSpec#withColumnGenerator");
+		}
+	}
+
+	private long readMaxValue(Table table, Column column) throws SQLException
+	{
+		try (Connection connection = dataSource.getConnection();
+				PreparedStatement statement = connection.prepareStatement(
+						"SELECT coalesce(max(\"" + column.name + "\"), 0) FROM " + table.qualifiedName);
+				ResultSet result = statement.executeQuery())
+		{
+			return result.next() ? result.getLong(1) : 0;
+		}
+	}
+
+	private static String text(long row, Random random, Integer maxLength)
+	{
+		StringBuilder b = new StringBuilder(Long.toString(row, 36)).append('_');
+		while (b.length() < 16)
+			b.append((char) ('a' + random.nextInt(26)));
+
+		return maxLength != null && b.length() > maxLength ? b.substring(0, maxLength) : b.toString();
+	}
+}
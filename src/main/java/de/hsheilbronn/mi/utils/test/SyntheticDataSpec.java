@@ -0,0 +1,155 @@
+package de.hsheilbronn.mi.utils.test;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Declarative specification of the synthetic rows generated by {@link SyntheticDataTemplateClassRule}. Tables are
+ * configured with a row count, values for columns without a custom {@link ColumnGenerator} are generated based on the
+ * column data type, integer columns continue after the largest existing value, foreign key columns reference random
+ * rows of the referenced table. All generated values are deterministic for a given seed and content of the template
+ * database, also values of <i>serial</i> and identity columns. Referenced keys are sampled on the server, at most
+ * {@value SyntheticDataGenerator#MAX_REFERENCED_KEYS} distinct keys are referenced per foreign key.
+ * <p>
+ * Tables may be given as <code>schema.table</code>, schema <code>public</code> is used if no schema is given.
+ */
+public class SyntheticDataSpec
+{
+	@FunctionalInterface
+	public interface ColumnGenerator
+	{
+		/**
+		 * @param row
+		 *            zero based row index within the table
+		 * @param random
+		 *            seeded random, not shared between threads
+		 * @return value in PostgreSQL text representation, <code>null</code> for SQL <code>NULL</code>
+		 */
+		String generate(long row, Random random);
+	}
+
+	private final long seed;
+	private final Map<String, Long> rowCounts = new LinkedHashMap<>();
+	private final Map<String, Map<String, ColumnGenerator>> columnGenerators = new HashMap<>();
+
+	public SyntheticDataSpec(long seed)
+	{
+		this.seed = seed;
+	}
+
+	/**
+	 * @param table
+	 *            not <code>null</code>
+	 * @param rowCount
+	 *            &gt;= 0
+	 * @return this
+	 */
+	public SyntheticDataSpec withTable(String table, long rowCount)
+	{
+		Objects.requireNonNull(table, "table");
+		if (rowCount < 0)
+			throw new IllegalArgumentException("rowCount < 0");
+
+		rowCounts.put(table, rowCount);
+		return this;
+	}
+
+	/**
+	 * Custom generators are not part of the {@link #getKey() key}, change the seed if the implementation of a generator
+	 * changes.
+	 *
+	 * @param table
+	 *            not <code>null</code>, configured via {@link #withTable(String, long)}
+	 * @param column
+	 *            not <code>null</code>
+	 * @param generator
+	 *            not <code>null</code>
+	 * @return this
+	 */
+	public SyntheticDataSpec withColumnGenerator(String table, String column, ColumnGenerator generator)
+	{
+		Objects.requireNonNull(table, "table");
+		Objects.requireNonNull(column, "column");
+		Objects.requireNonNull(generator, "generator");
+		if (!rowCounts.containsKey(table))
+			throw new IllegalArgumentException("Table '" + table + "' not configured");
+
+		columnGenerators.computeIfAbsent(table, t -> new HashMap<>()).put(column, generator);
+		return this;
+	}
+
+	public long getSeed()
+	{
+		return seed;
+	}
+
+	/**
+	 * @return table to row count, in configuration order
+	 */
+	public Map<String, Long> getRowCounts()
+	{
+		return Collections.unmodifiableMap(rowCounts);
+	}
+
+	/**
+	 * @param table
+	 *            not <code>null</code>
+	 * @return column name to generator, empty if no custom generators configured for the given table
+	 */
+	public Map<String, ColumnGenerator> getColumnGenerators(String table)
+	{
+		return Collections.unmodifiableMap(columnGenerators.getOrDefault(table, Collections.emptyMap()));
+	}
+
+	/**
+	 * @return 12 character hex key computed from seed, tables, row counts and columns with custom generators
+	 */
+	public String getKey()
+	{
+		return getKey(null);
+	}
+
+	/**
+	 * @param schemaChecksum
+	 *            may be <code>null</code>
+	 * @return 12 character hex key computed from seed, tables, row counts, columns with custom generators and the given
+	 *         schema checksum
+	 */
+	String getKey(String schemaChecksum)
+	{
+		StringBuilder b = new StringBuilder();
+		if (schemaChecksum != null)
+			b.append("schema=").append(schemaChecksum).append(';');
+		b.append("seed=").append(seed).append(';');
+		new TreeMap<>(rowCounts).forEach((table, rowCount) ->
+		{
+			b.append(table).append('=').append(rowCount);
+			new TreeSet<>(getColumnGenerators(table).keySet()).forEach(column -> b.append(',').append(column));
+			b.append(';');
+		});
+
+		try
+		{
+			byte[] digest = MessageDigest.getInstance("SHA-256").digest(b.toString().getBytes(StandardCharsets.UTF_8));
+
+			StringBuilder key = new StringBuilder();
+			for (int i = 0; i < 6; i++)
+				key.append(String.format("%02x", digest[i]));
+
+			return key.toString();
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			throw new RuntimeException(e);
+		}
+	}
+}
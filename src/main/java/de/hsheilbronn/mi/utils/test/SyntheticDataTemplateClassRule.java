@@ -0,0 +1,281 @@
+package de.hsheilbronn.mi.utils.test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.dbcp2.BasicDataSource;
+import org.junit.ClassRule;
+import org.junit.rules.ExternalResource;
+import org.junit.rules.RuleChain;
+import org.postgresql.Driver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Implements a {@link ClassRule} to create a template database filled with synthetic rows according to a
+ * {@link SyntheticDataSpec}. The synthetic data template database is created from the template database of the given
+ * {@link TemplateClassRule}, named <code>&lt;template-database-name&gt;_&lt;key&gt;</code> and reused if it already
+ * exists on the server. The key is computed from the spec and a checksum of the source template database schema, the
+ * md5 sums of the liquibase <i>DATABASECHANGELOG</i> or the table columns if the template was not created by
+ * liquibase. The test database is recreated from the synthetic data template database. Use in a
+ * {@link RuleChain} around the given {@link TemplateClassRule} and in combination with {@link PostgresTemplateRule}
+ * constructed with this rule.
+ * <p>
+ * The template database of the given {@link TemplateClassRule} must exist, its name must not be longer than 44
+ * characters: PostgreSQL limits database names to 63 characters and the synthetic data template database is built as
+ * <code>&lt;template-database-name&gt;_&lt;key&gt;_build</code>.
+ *
+ * @see SyntheticDataSpec#getKey()
+ */
+public class SyntheticDataTemplateClassRule extends ExternalResource implements TemplateClassRule
+{
+	private static final Logger logger = LoggerFactory.getLogger(SyntheticDataTemplateClassRule.class);
+
+	private static final int MAX_DATABASE_NAME_LENGTH = 63;
+
+	private final TemplateClassRule templateClassRule;
+	private final SyntheticDataSpec spec;
+	private final int parallelism;
+
+	private String templateDatabaseName;
+
+	public SyntheticDataTemplateClassRule(TemplateClassRule templateClassRule, SyntheticDataSpec spec)
+	{
+		this(templateClassRule, spec, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * @param templateClassRule
+	 *            not <code>null</code>
+	 * @param spec
+	 *            not <code>null</code>
+	 * @param parallelism
+	 *            number of parallel <i>COPY</i> connections, &gt; 0
+	 */
+	public SyntheticDataTemplateClassRule(TemplateClassRule templateClassRule, SyntheticDataSpec spec,
+			int parallelism)
+	{
+		if (parallelism <= 0)
+			throw new IllegalArgumentException("parallelism <= 0");
+
+		this.templateClassRule = templateClassRule;
+		this.spec = spec;
+		this.parallelism = parallelism;
+	}
+
+	@Override
+	protected void before() throws Throwable
+	{
+		templateDatabaseName = checkDatabaseNameLength(templateClassRule.getTemplateDatabaseName() + "_"
+				+ spec.getKey(readSchemaChecksum(templateClassRule.getTemplateDatabaseName())));
+		checkDatabaseNameLength(getBuildDatabaseName());
+
+		try (Connection connection = getRootDataSource().getConnection())
+		{
+			if (databaseExists(connection, templateDatabaseName))
+				logger.info("Synthetic data template database '{}' exists", templateDatabaseName);
+			else
+				createSyntheticDataTemplateDatabase(connection);
+
+			// closed beforehand, the evictor would otherwise reopen connections and dropping the database fails
+			List<BasicDataSource> testDataSources = new ArrayList<>();
+			for (BasicDataSource testDataSource : getTestDataSources())
+			{
+				if (!testDataSource.isClosed())
+				{
+					testDataSource.close();
+					testDataSources.add(testDataSource);
+				}
+			}
+
+			execute(connection,
+					"SELECT pg_terminate_backend(pg_stat_activity.pid) FROM pg_stat_activity WHERE datname = ?",
+					getDatabaseName());
+			execute(connection, "DROP DATABASE " + getDatabaseName());
+			execute(connection, "CREATE DATABASE " + getDatabaseName() + " TEMPLATE " + templateDatabaseName);
+
+			for (BasicDataSource testDataSource : testDataSources)
+				testDataSource.start();
+		}
+		catch (SQLException e)
+		{
+			logger.warn("Error while creating synthetic data template database '{}': {}", templateDatabaseName,
+					e.getMessage());
+			throw new RuntimeException(e);
+		}
+	}
+
+	@Override
+	protected void after()
+	{
+		ResetState.remove(this);
+	}
+
+	private String getBuildDatabaseName()
+	{
+		return templateDatabaseName + "_build";
+	}
+
+	private static String checkDatabaseNameLength(String databaseName)
+	{
+		if (databaseName.length() > MAX_DATABASE_NAME_LENGTH)
+			throw new IllegalArgumentException("Synthetic data database name '" + databaseName + "' longer than "
+					+ MAX_DATABASE_NAME_LENGTH + " characters");
+
+		return databaseName;
+	}
+
+	private String readSchemaChecksum(String databaseName) throws SQLException
+	{
+		BasicDataSource dataSource = createDataSource(databaseName);
+		try (Connection connection = dataSource.getConnection())
+		{
+			String sql = query(connection, "SELECT to_regclass('databasechangelog')::text") != null
+					? "SELECT md5(string_agg(id || ':' || author || ':' || coalesce(md5sum, ''), ',' "
+							+ "ORDER BY orderexecuted)) FROM databasechangelog"
+					: "SELECT md5(string_agg(table_schema || '.' || table_name || '.' || column_name || ':' "
+							+ "|| data_type, ',' ORDER BY table_schema, table_name, ordinal_position)) "
+							+ "FROM information_schema.columns "
+							+ "WHERE table_schema NOT IN ('pg_catalog', 'information_schema')";
+
+			String checksum = query(connection, sql);
+			logger.debug("Schema checksum of database '{}': {}", databaseName, checksum);
+
+			return checksum;
+		}
+		finally
+		{
+			// template database must not be accessed while used as template
+			dataSource.close();
+		}
+	}
+
+	private String query(Connection connection, String sql) throws SQLException
+	{
+		try (PreparedStatement statement = connection.prepareStatement(sql);
+				ResultSet result = statement.executeQuery())
+		{
+			return result.next() ? result.getString(1) : null;
+		}
+	}
+
+	private void createSyntheticDataTemplateDatabase(Connection connection) throws SQLException, InterruptedException
+	{
+		String buildDatabaseName = getBuildDatabaseName();
+
+		logger.info("Creating synthetic data template database '{}' from template database '{}' ...",
+				templateDatabaseName, templateClassRule.getTemplateDatabaseName());
+
+		execute(connection, "DROP DATABASE IF EXISTS " + buildDatabaseName);
+		execute(connection,
+				"CREATE DATABASE " + buildDatabaseName + " TEMPLATE " + templateClassRule.getTemplateDatabaseName());
+
+		BasicDataSource buildDataSource = createDataSource(buildDatabaseName);
+		try
+		{
+			new SyntheticDataGenerator(buildDataSource, spec, parallelism).generate();
+		}
+		finally
+		{
+			buildDataSource.close();
+		}
+
+		execute(connection,
+				"SELECT pg_terminate_backend(pg_stat_activity.pid) FROM pg_stat_activity WHERE datname = ?",
+				buildDatabaseName);
+		execute(connection, "ALTER DATABASE " + buildDatabaseName + " RENAME TO " + templateDatabaseName);
+
+		logger.info("Creating synthetic data template database '{}' [Done]", templateDatabaseName);
+	}
+
+	private BasicDataSource createDataSource(String databaseName)
+	{
+		BasicDataSource rootDataSource = getRootDataSource();
+
+		BasicDataSource dataSource = new BasicDataSource();
+		dataSource.setDriverClassName(Driver.class.getName());
+		dataSource.setUrl(JdbcUrls.withDatabaseName(rootDataSource.getUrl(), databaseName));
+		dataSource.setUsername(getUsername(rootDataSource));
+		dataSource.setPassword(getPassword(rootDataSource));
+		dataSource.setMaxTotal(parallelism + 1);
+		dataSource.setConnectionInitSqls(List.of("SET synchronous_commit TO off"));
+
+		return dataSource;
+	}
+
+	// credentials of the wrapped rule only accessible via its root data source
+	@SuppressWarnings("deprecation")
+	private static String getUsername(BasicDataSource dataSource)
+	{
+		return dataSource.getUsername();
+	}
+
+	@SuppressWarnings("deprecation")
+	private static String getPassword(BasicDataSource dataSource)
+	{
+		return dataSource.getPassword();
+	}
+
+	private void execute(Connection connection, String sql, String... parameters) throws SQLException
+	{
+		try (PreparedStatement statement = connection.prepareStatement(sql))
+		{
+			for (int i = 0; i < parameters.length; i++)
+				statement.setString(i + 1, parameters[i]);
+
+			logger.debug("Executing: {}", statement.toString());
+			statement.execute();
+		}
+	}
+
+	private boolean databaseExists(Connection connection, String databaseName) throws SQLException
+	{
+		try (PreparedStatement statement = connection
+				.prepareStatement("SELECT count(*) FROM pg_database WHERE datname = ?"))
+		{
+			statement.setString(1, databaseName);
+
+			try (ResultSet result = statement.executeQuery())
+			{
+				return result.next() && result.getInt(1) > 0;
+			}
+		}
+	}
+
+	@Override
+	public BasicDataSource getRootDataSource()
+	{
+		return templateClassRule.getRootDataSource();
+	}
+
+	@Override
+	public String getDatabaseName()
+	{
+		return templateClassRule.getDatabaseName();
+	}
+
+	@Override
+	public BasicDataSource getTestDataSource()
+	{
+		return templateClassRule.getTestDataSource();
+	}
+
+	@Override
+	public List<BasicDataSource> getTestDataSources()
+	{
+		return templateClassRule.getTestDataSources();
+	}
+
+	/**
+	 * @return synthetic data template database name, <code>null</code> before the rule was applied
+	 */
+	@Override
+	public String getTemplateDatabaseName()
+	{
+		return templateDatabaseName;
+	}
+}
@@ -1,5 +1,7 @@
 package de.hsheilbronn.mi.utils.test;
 
+import java.util.List;
+
 import org.apache.commons.dbcp2.BasicDataSource;
 
 public interface TemplateClassRule
@@ -18,4 +20,23 @@ public interface TemplateClassRule
 	 * @return Template database name
 	 */
 	String getTemplateDatabaseName();
+
+	/**
+	 * @return Connection pool to the test database, <code>null</code> if not managed by this rule
+	 * @see #getTestDataSources()
+	 */
+	default BasicDataSource getTestDataSource()
+	{
+		return null;
+	}
+
+	/**
+	 * @return Connection pools to the test database closed by {@link PostgresTemplateRule} while the test database is
+	 *         recreated, started again afterwards, empty if not managed by this rule
+	 */
+	default List<BasicDataSource> getTestDataSources()
+	{
+		BasicDataSource testDataSource = getTestDataSource();
+		return testDataSource == null ? List.of() : List.of(testDataSource);
+	}
 }
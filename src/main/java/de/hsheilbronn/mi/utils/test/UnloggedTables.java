@@ -0,0 +1,106 @@
+package de.hsheilbronn.mi.utils.test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Converts all permanent tables of a database to <i>UNLOGGED</i>. Tables are converted referencing tables first, a
+ * permanent table can not reference an unlogged table. Tables with cyclic foreign keys stay permanent.
+ * <p>
+ * Writes to unlogged tables are not WAL logged, table contents do not survive a server crash. The conversion can be
+ * disabled for all class rules via system property <code>db-test-utils.unlogged-tables.disabled=true</code>, e.g. for
+ * test suites depending on logged tables.
+ */
+final class UnloggedTables
+{
+	private static final Logger logger = LoggerFactory.getLogger(UnloggedTables.class);
+
+	/**
+	 * System property to disable the conversion for all class rules, e.g. to run a test suite against permanent tables
+	 * without changing the code: <code>-Ddb-test-utils.unlogged-tables.disabled=true</code>
+	 */
+	static final String DISABLED_PROPERTY = "db-test-utils.unlogged-tables.disabled";
+
+	private UnloggedTables()
+	{
+	}
+
+	/**
+	 * @param configured
+	 *            conversion configured for class rule
+	 * @return <code>true</code> if <b>configured</b> and not disabled via system property {@value #DISABLED_PROPERTY}
+	 */
+	static boolean isEnabled(boolean configured)
+	{
+		return configured && !Boolean.getBoolean(DISABLED_PROPERTY);
+	}
+
+	static void convert(DataSource dataSource, String databaseName)
+	{
+		try (Connection connection = dataSource.getConnection())
+		{
+			connection.setReadOnly(false);
+
+			Map<String, Set<String>> referencedTables = new LinkedHashMap<>();
+			try (PreparedStatement statement = connection.prepareStatement(
+					"SELECT c.oid::regclass::text, ARRAY(SELECT DISTINCT f.confrelid::regclass::text "
+							+ "FROM pg_constraint f WHERE f.conrelid = c.oid AND f.contype = 'f' "
+							+ "AND f.confrelid <> c.oid) FROM pg_class c JOIN pg_namespace n ON n.oid = c.relnamespace "
+							+ "WHERE c.relkind = 'r' AND c.relpersistence = 'p' "
+							+ "AND n.nspname NOT IN ('pg_catalog', 'information_schema') "
+							+ "AND n.nspname NOT LIKE 'pg_toast%' ORDER BY 1");
+					ResultSet result = statement.executeQuery())
+			{
+				while (result.next())
+					referencedTables.put(result.getString(1),
+							new HashSet<>(Arrays.asList((String[]) result.getArray(2).getArray())));
+			}
+
+			logger.info("Converting {} tables of database '{}' to unlogged ...", referencedTables.size(), databaseName);
+
+			while (!referencedTables.isEmpty())
+			{
+				Optional<String> next = referencedTables.keySet().stream().filter(
+						table -> referencedTables.values().stream().noneMatch(referenced -> referenced.contains(table)))
+						.findFirst();
+
+				if (next.isEmpty())
+				{
+					logger.warn("Tables {} with cyclic foreign keys not converted to unlogged",
+							referencedTables.keySet());
+					break;
+				}
+
+				try (PreparedStatement statement = connection
+						.prepareStatement("ALTER TABLE " + next.get() + " SET UNLOGGED"))
+				{
+					logger.debug("Executing: {}", statement.toString());
+					statement.execute();
+				}
+
+				referencedTables.remove(next.get());
+			}
+
+			logger.info("Converting tables of database '{}' to unlogged [Done]", databaseName);
+		}
+		catch (SQLException e)
+		{
+			logger.warn("Error while converting tables of database '{}' to unlogged: {}", databaseName,
+					e.getMessage());
+			throw new RuntimeException(e);
+		}
+	}
+}
@@ -0,0 +1,91 @@
+package de.hsheilbronn.mi.utils.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Duration;
+import java.util.Map;
+
+import org.apache.commons.dbcp2.BasicDataSource;
+import org.junit.Test;
+
+import de.hsheilbronn.mi.utils.test.DataSourceConfig.ValidationPolicy;
+
+public class DataSourceConfigTest
+{
+	@Test
+	public void testApplyPoolSettings() throws Exception
+	{
+		DataSourceConfig config = DataSourceConfig.builder().initialSize(4).minIdle(3).maxIdle(6).maxTotal(8)
+				.poolPreparedStatements(true).maxOpenPreparedStatements(50).build();
+
+		BasicDataSource dataSource = new BasicDataSource();
+		config.applyTo(dataSource);
+
+		assertEquals(4, dataSource.getInitialSize());
+		assertEquals(3, dataSource.getMinIdle());
+		assertEquals(6, dataSource.getMaxIdle());
+		assertEquals(8, dataSource.getMaxTotal());
+		assertTrue(dataSource.isPoolPreparedStatements());
+		assertEquals(50, dataSource.getMaxOpenPreparedStatements());
+	}
+
+	@Test
+	public void testApplyDefault() throws Exception
+	{
+		BasicDataSource defaults = new BasicDataSource();
+		BasicDataSource dataSource = new BasicDataSource();
+		DataSourceConfig.DEFAULT.applyTo(dataSource);
+
+		assertEquals(defaults.getInitialSize(), dataSource.getInitialSize());
+		assertEquals(defaults.getMaxTotal(), dataSource.getMaxTotal());
+		assertTrue(dataSource.getTestOnBorrow());
+		assertFalse(dataSource.getTestWhileIdle());
+		assertEquals(DataSourceConfig.DEFAULT_VALIDATION_QUERY, dataSource.getValidationQuery());
+	}
+
+	@Test
+	public void testApplyOnBorrowIsValid() throws Exception
+	{
+		BasicDataSource dataSource = new BasicDataSource();
+		DataSourceConfig.builder().validationPolicy(ValidationPolicy.ON_BORROW_IS_VALID).build().applyTo(dataSource);
+
+		assertTrue(dataSource.getTestOnBorrow());
+		assertNull(dataSource.getValidationQuery());
+	}
+
+	@Test
+	public void testApplyWhileIdle() throws Exception
+	{
+		BasicDataSource dataSource = new BasicDataSource();
+		DataSourceConfig.builder().validationPolicy(ValidationPolicy.WHILE_IDLE).validationQuery("SELECT 2")
+				.evictionInterval(Duration.ofSeconds(5)).build().applyTo(dataSource);
+
+		assertFalse(dataSource.getTestOnBorrow());
+		assertTrue(dataSource.getTestWhileIdle());
+		assertEquals("SELECT 2", dataSource.getValidationQuery());
+		assertEquals(Duration.ofSeconds(5), dataSource.getDurationBetweenEvictionRuns());
+	}
+
+	@Test
+	public void testApplyNone() throws Exception
+	{
+		BasicDataSource dataSource = new BasicDataSource();
+		DataSourceConfig.builder().validationPolicy(ValidationPolicy.NONE).build().applyTo(dataSource);
+
+		assertFalse(dataSource.getTestOnBorrow());
+		assertFalse(dataSource.getTestWhileIdle());
+	}
+
+	@Test
+	public void testConnectionProperties() throws Exception
+	{
+		DataSourceConfig config = DataSourceConfig.builder().reWriteBatchedInserts(true).prepareThreshold(1)
+				.defaultRowFetchSize(100).connectionProperty("ApplicationName", "test").build();
+
+		assertEquals(Map.of("reWriteBatchedInserts", "true", "prepareThreshold", "1", "defaultRowFetchSize", "100",
+				"ApplicationName", "test"), config.getConnectionProperties());
+	}
+}
@@ -0,0 +1,96 @@
+package de.hsheilbronn.mi.utils.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import liquibase.changelog.ChangeSet;
+import liquibase.changelog.DatabaseChangeLog;
+
+public class LiquibaseMigratorTest
+{
+	private static List<String> write(String text, boolean close) throws Exception
+	{
+		List<String> lines = new ArrayList<>();
+		LiquibaseMigrator.LineLoggingOutputStream output = new LiquibaseMigrator.LineLoggingOutputStream(lines::add);
+		output.write(text.getBytes(StandardCharsets.UTF_8));
+		output.flush();
+
+		if (close)
+			output.close();
+
+		return lines;
+	}
+
+	@Test
+	public void testLinesSplit() throws Exception
+	{
+		assertEquals(List.of("first", "second", "third"), write("first\nsecond\r\nthird\r", false));
+	}
+
+	@Test
+	public void testBlankLinesSkipped() throws Exception
+	{
+		assertEquals(List.of("first", "second"), write("\n\nfirst\n  \t\n\r\nsecond\n", false));
+	}
+
+	@Test
+	public void testPartialLastLineOnClose() throws Exception
+	{
+		assertEquals(List.of("first"), write("first\nsecond", false));
+		assertEquals(List.of("first", "second"), write("first\nsecond", true));
+	}
+
+	@Test
+	public void testMultiByteCharacters() throws Exception
+	{
+		assertEquals(List.of("Überprüfung ✓"), write("Überprüfung ✓\n", true));
+	}
+
+	private static ChangeSet changeSet(String id)
+	{
+		return new ChangeSet(id, "test", false, false, "db.changelog.xml", null, null, (DatabaseChangeLog) null);
+	}
+
+	@Test
+	public void testTimingListener() throws Exception
+	{
+		LiquibaseMigrator.TimingChangeExecListener listener = new LiquibaseMigrator.TimingChangeExecListener();
+
+		ChangeSet first = changeSet("first");
+		listener.willRun(first, null, null, ChangeSet.RunStatus.NOT_RAN);
+		Thread.sleep(20);
+		listener.ran(first, null, null, ChangeSet.ExecType.EXECUTED);
+
+		ChangeSet second = changeSet("second");
+		listener.willRun(second, null, null, ChangeSet.RunStatus.NOT_RAN);
+		listener.ran(second, null, null, ChangeSet.ExecType.EXECUTED);
+
+		assertEquals(2, listener.getTimings().size());
+		assertEquals(first.toString(false), listener.getTimings().get(0).getChangeSet());
+		assertTrue(listener.getTimings().get(0).getDuration().toMillis() >= 20);
+		assertEquals(second.toString(false), listener.getTimings().get(1).getChangeSet());
+		assertFalse(listener.getTimings().get(1).getDuration().isNegative());
+	}
+
+	@Test
+	public void testTimingListenerFailedAndNotStarted() throws Exception
+	{
+		LiquibaseMigrator.TimingChangeExecListener listener = new LiquibaseMigrator.TimingChangeExecListener();
+
+		ChangeSet failed = changeSet("failed");
+		listener.willRun(failed, null, null, ChangeSet.RunStatus.NOT_RAN);
+		listener.runFailed(failed, null, null, new Exception("test"));
+
+		// ran without willRun, e.g. change set skipped
+		listener.ran(changeSet("skipped"), null, null, ChangeSet.ExecType.SKIPPED);
+
+		assertTrue(listener.getTimings().isEmpty());
+	}
+}
@@ -0,0 +1,118 @@
+package de.hsheilbronn.mi.utils.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Map;
+
+import org.junit.Assume;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.RuleChain;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.bridge.SLF4JBridgeHandler;
+
+import de.hsheilbronn.mi.utils.test.DataSourceConfig.ValidationPolicy;
+
+public class LocalPostgreSqlLiquibaseTemplateClassRuleTest
+{
+	static
+	{
+		SLF4JBridgeHandler.removeHandlersForRootLogger();
+		SLF4JBridgeHandler.install();
+	}
+
+	private static final Logger logger = LoggerFactory.getLogger(LocalPostgreSqlLiquibaseTemplateClassRuleTest.class);
+
+	private static final String ROOT_USER = "root_user";
+	private static final Path POSTGRES_BIN_DIRECTORY = Paths
+			.get(System.getProperty("postgres.bin.directory", "/usr/lib/postgresql/15/bin"));
+
+	private static final LocalPostgreSqlLiquibaseTemplateClassRule localRule = LocalPostgreSqlLiquibaseTemplateClassRule
+			.builder(POSTGRES_BIN_DIRECTORY).rootUser(ROOT_USER).testDatabaseName("test_db")
+			.templateDatabaseName("test_template").changeLogFile("db.changelog.xml")
+			.changeLogParameters(Map.of("liquibase_user", ROOT_USER, "server_users_group", "test_group", "server_user",
+					"test_user", "server_user_password", "test_user_password"))
+			.testDataSourceConfig(DataSourceConfig.builder().initialSize(2).minIdle(2).poolPreparedStatements(true)
+					.validationPolicy(ValidationPolicy.ON_BORROW_IS_VALID).reWriteBatchedInserts(true).build())
+			.build().withUnloggedTables();
+
+	@ClassRule
+	public static final RuleChain ruleChain = RuleChain.outerRule((base, description) ->
+	{
+		Assume.assumeTrue("No PostgreSQL installation at " + POSTGRES_BIN_DIRECTORY
+				+ ", configure via system property postgres.bin.directory",
+				Files.isExecutable(POSTGRES_BIN_DIRECTORY.resolve("postgres")));
+		return base;
+	}).around(localRule);
+
+	@Rule
+	public final PostgresTemplateRule templateRule = new PostgresTemplateRule(localRule);
+
+	@Test
+	public void test1() throws Exception
+	{
+		logger.info("test1");
+
+		assertEquals(0, countTestTable());
+		insertIntoTestTable();
+		assertEquals(1, countTestTable());
+	}
+
+	private int countTestTable() throws SQLException
+	{
+		try (Connection connection = localRule.getTestDataSource().getConnection();
+				PreparedStatement statement = connection.prepareStatement("SELECT count(*) FROM test_table");
+				ResultSet result = statement.executeQuery())
+		{
+			result.next();
+			return result.getInt(1);
+		}
+	}
+
+	private void insertIntoTestTable() throws SQLException
+	{
+		try (Connection connection = localRule.getTestDataSource().getConnection())
+		{
+			connection.setReadOnly(false);
+
+			try (PreparedStatement statement = connection
+					.prepareStatement("INSERT INTO test_table VALUES('test', '{}')"))
+			{
+				statement.execute();
+			}
+		}
+	}
+
+	@Test
+	public void testTablesUnlogged() throws Exception
+	{
+		try (Connection connection = localRule.getTestDataSource().getConnection();
+				PreparedStatement statement = connection
+						.prepareStatement("SELECT relpersistence FROM pg_class WHERE relname = 'test_table'");
+				ResultSet result = statement.executeQuery())
+		{
+			assertTrue(result.next());
+			assertEquals("u", result.getString(1));
+		}
+	}
+
+	@Test
+	public void test2() throws Exception
+	{
+		logger.info("test2");
+
+		assertEquals(0, countTestTable());
+		insertIntoTestTable();
+		assertEquals(1, countTestTable());
+	}
+}
@@ -0,0 +1,160 @@
+package de.hsheilbronn.mi.utils.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.sql.DataSource;
+
+import org.apache.commons.dbcp2.BasicDataSource;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.RuleChain;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.bridge.SLF4JBridgeHandler;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.utility.DockerImageName;
+
+public class MultiLiquibaseTemplateClassRuleTest
+{
+	static
+	{
+		SLF4JBridgeHandler.removeHandlersForRootLogger();
+		SLF4JBridgeHandler.install();
+	}
+
+	private static final Logger logger = LoggerFactory.getLogger(MultiLiquibaseTemplateClassRuleTest.class);
+
+	private static final String ROOT_USER = "root_user";
+
+	private static final PostgreSQLContainer<?> container = new PostgreSQLContainer<>(
+			DockerImageName.parse("postgres:15")).withUsername(ROOT_USER);
+
+	private static final MultiLiquibaseTemplateClassRule multiRule = new MultiLiquibaseTemplateClassRule(container, 2,
+			List.of(new LiquibaseTemplateSpec("db.changelog.xml",
+					Map.of("liquibase_user", ROOT_USER, "server_users_group", "test_group", "server_user",
+							"test_user", "server_user_password", "test_user_password"),
+					"test_db"), new LiquibaseTemplateSpec("db.changelog.other.xml", null, "other_db")));
+
+	@ClassRule
+	public static final RuleChain ruleChain = RuleChain.outerRule(container).around(multiRule);
+
+	@Test
+	public void testTemplatesMigratedIndependently() throws Exception
+	{
+		logger.info("testTemplatesMigratedIndependently");
+
+		MultiLiquibaseTemplateClassRule.Template test = multiRule.getTemplate("test_db");
+		MultiLiquibaseTemplateClassRule.Template other = multiRule.getTemplate("other_db");
+
+		assertEquals(List.of("test_table"), getTables(test.getTestDataSource()));
+		assertEquals(List.of("other_table"), getTables(other.getTestDataSource()));
+
+		assertEquals(List.of("liquibase-3.5-test", "create_users"), getChangeSetIds(test.getTestDataSource()));
+		assertEquals(List.of("other-table"), getChangeSetIds(other.getTestDataSource()));
+
+		assertTrue(databaseExists("test_db_template"));
+		assertTrue(databaseExists("other_db_template"));
+	}
+
+	@Test
+	public void testFailingTemplate() throws Exception
+	{
+		logger.info("testFailingTemplate");
+
+		BasicDataSource rootDataSource = new BasicDataSource();
+		MultiLiquibaseTemplateClassRule failingRule = new MultiLiquibaseTemplateClassRule(() ->
+		{
+			rootDataSource.setUrl(container.getJdbcUrl());
+			rootDataSource.setUsername(container.getUsername());
+			rootDataSource.setPassword(container.getPassword());
+			return rootDataSource;
+		}, 2, List.of(new LiquibaseTemplateSpec("db.changelog.other.xml", null, "good_db"),
+				new LiquibaseTemplateSpec("db.changelog.broken.xml", null, "broken_db")), DataSourceConfig.DEFAULT);
+
+		AtomicBoolean executed = new AtomicBoolean();
+		Statement test = new Statement()
+		{
+			@Override
+			public void evaluate()
+			{
+				executed.set(true);
+			}
+		};
+
+		boolean failed = false;
+		try
+		{
+			failingRule.apply(test, Description.createTestDescription(getClass(), "failing")).evaluate();
+		}
+		catch (Throwable e)
+		{
+			logger.info("Expected exception: {}", e.getMessage());
+			failed = true;
+		}
+
+		assertTrue(failed);
+		assertFalse(executed.get());
+		assertTrue(rootDataSource.isClosed());
+		assertTrue(isNullOrClosed(failingRule.getTemplate("good_db").getTestDataSource()));
+		assertTrue(isNullOrClosed(failingRule.getTemplate("broken_db").getTestDataSource()));
+		assertFalse(databaseExists("broken_db_template"));
+	}
+
+	private boolean isNullOrClosed(BasicDataSource dataSource)
+	{
+		// data source not created if task canceled before
+		return dataSource == null || dataSource.isClosed();
+	}
+
+	private List<String> getTables(DataSource dataSource) throws SQLException
+	{
+		return queryStrings(dataSource, "SELECT table_name FROM information_schema.tables "
+				+ "WHERE table_schema = 'public' AND table_name NOT LIKE 'databasechangelog%' ORDER BY table_name");
+	}
+
+	private List<String> getChangeSetIds(DataSource dataSource) throws SQLException
+	{
+		return queryStrings(dataSource, "SELECT id FROM databasechangelog ORDER BY id DESC");
+	}
+
+	private List<String> queryStrings(DataSource dataSource, String sql) throws SQLException
+	{
+		try (Connection connection = dataSource.getConnection();
+				PreparedStatement statement = connection.prepareStatement(sql);
+				ResultSet result = statement.executeQuery())
+		{
+			List<String> values = new ArrayList<>();
+			while (result.next())
+				values.add(result.getString(1));
+			return values;
+		}
+	}
+
+	private boolean databaseExists(String databaseName) throws SQLException
+	{
+		try (Connection connection = multiRule.getTemplate("test_db").getRootDataSource().getConnection();
+				PreparedStatement statement = connection
+						.prepareStatement("SELECT 1 FROM pg_database WHERE datname = ?"))
+		{
+			statement.setString(1, databaseName);
+
+			try (ResultSet result = statement.executeQuery())
+			{
+				return result.next();
+			}
+		}
+	}
+}
@@ -0,0 +1,194 @@
+package de.hsheilbronn.mi.utils.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.ExternalResource;
+import org.junit.rules.RuleChain;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.bridge.SLF4JBridgeHandler;
+import org.testcontainers.DockerClientFactory;
+import org.testcontainers.utility.DockerImageName;
+
+import com.github.dockerjava.api.exception.NotFoundException;
+
+public class PostgreSqlContainerClusterClassRuleTest
+{
+	static
+	{
+		SLF4JBridgeHandler.removeHandlersForRootLogger();
+		SLF4JBridgeHandler.install();
+	}
+
+	private static final Logger logger = LoggerFactory.getLogger(PostgreSqlContainerClusterClassRuleTest.class);
+
+	private static final String ROOT_USER = "root_user";
+
+	private static final List<PostgreSqlContainerLiquibaseTemplateClassRule> shards = new CopyOnWriteArrayList<>();
+
+	// every clone above the threshold, third shard started after the first latency window
+	private static final PostgreSqlContainerClusterClassRule clusterRule = PostgreSqlContainerClusterClassRule
+			.builder(() ->
+			{
+				PostgreSqlContainerLiquibaseTemplateClassRule shard = PostgreSqlContainerLiquibaseTemplateClassRule
+						.builder(DockerImageName.parse("postgres:15")).rootUser(ROOT_USER).testDatabaseName("test_db")
+						.templateDatabaseName("test_template").changeLogFile("db.changelog.xml")
+						.changeLogParameters(Map.of("liquibase_user", ROOT_USER, "server_users_group", "test_group",
+								"server_user", "test_user", "server_user_password", "test_user_password"))
+						.build().withMigrationImageCache();
+				shards.add(shard);
+				return shard;
+			}).initialShards(2).maxShards(3).scaleUpCloneLatency(Duration.ZERO).build();
+
+	// cache image removed after all shard containers using it are stopped
+	@ClassRule
+	public static final RuleChain ruleChain = RuleChain.outerRule(new ExternalResource()
+	{
+		@Override
+		protected void after()
+		{
+			removeImageCache();
+		}
+	}).around(clusterRule);
+
+	private static void removeImageCache()
+	{
+		Set<String> keys = new HashSet<>();
+		for (PostgreSqlContainerLiquibaseTemplateClassRule shard : shards)
+		{
+			if (shard.getImageCacheKey() == null || !keys.add(shard.getImageCacheKey()))
+				continue;
+
+			String cacheImage = PostgreSqlContainerLiquibaseTemplateClassRule.IMAGE_CACHE_REPOSITORY + ":"
+					+ shard.getImageCacheKey();
+			try
+			{
+				DockerClientFactory.instance().client().removeImageCmd(cacheImage).withForce(true).exec();
+			}
+			catch (NotFoundException e)
+			{
+				logger.warn("Image {} not found", cacheImage);
+			}
+		}
+	}
+
+	@Test
+	public void testDatabasesSpreadAcrossShards() throws Throwable
+	{
+		logger.info("testDatabasesSpreadAcrossShards");
+
+		assertEquals(2, runConcurrentDatabases(2).size());
+	}
+
+	@Test
+	public void testDatabaseDroppedAfterTest() throws Throwable
+	{
+		logger.info("testDatabaseDroppedAfterTest");
+
+		PostgreSqlContainerClusterClassRule.ShardedDatabaseRule databaseRule = clusterRule.newDatabaseRule();
+		databaseRule.apply(new Statement()
+		{
+			@Override
+			public void evaluate() throws Throwable
+			{
+				assertEquals(0, countTestTable(databaseRule));
+			}
+		}, Description.createTestDescription(getClass(), "nested")).evaluate();
+
+		assertFalse(databaseExists(databaseRule));
+	}
+
+	@Test
+	public void testScaleUpAboveLatencyThreshold() throws Throwable
+	{
+		logger.info("testScaleUpAboveLatencyThreshold");
+
+		for (int i = 0; i < PostgreSqlContainerClusterClassRule.CLONE_LATENCY_WINDOW; i++)
+			runConcurrentDatabases(1);
+
+		long timeout = System.nanoTime() + Duration.ofMinutes(2).toNanos();
+		while (clusterRule.getShardCount() < 3 && System.nanoTime() < timeout)
+			Thread.sleep(500);
+
+		assertEquals(3, clusterRule.getShardCount());
+		assertEquals(Set.of(0, 1, 2), runConcurrentDatabases(3));
+
+		for (int i = 0; i < PostgreSqlContainerClusterClassRule.CLONE_LATENCY_WINDOW; i++)
+			runConcurrentDatabases(1);
+
+		assertEquals(3, clusterRule.getShardCount());
+	}
+
+	/**
+	 * @return indexes of the shards used while all databases were in use
+	 */
+	private Set<Integer> runConcurrentDatabases(int databases) throws Throwable
+	{
+		List<PostgreSqlContainerClusterClassRule.ShardedDatabaseRule> rules = new ArrayList<>();
+		for (int i = 0; i < databases; i++)
+			rules.add(clusterRule.newDatabaseRule());
+
+		Set<Integer> shardIndexes = new HashSet<>();
+		Statement statement = new Statement()
+		{
+			@Override
+			public void evaluate() throws Throwable
+			{
+				for (PostgreSqlContainerClusterClassRule.ShardedDatabaseRule rule : rules)
+					shardIndexes.add(rule.getShardIndex());
+			}
+		};
+
+		for (PostgreSqlContainerClusterClassRule.ShardedDatabaseRule rule : rules)
+			statement = rule.apply(statement, Description.createTestDescription(getClass(), "nested"));
+
+		statement.evaluate();
+
+		return shardIndexes;
+	}
+
+	private int countTestTable(PostgreSqlContainerClusterClassRule.ShardedDatabaseRule databaseRule)
+			throws SQLException
+	{
+		try (Connection connection = databaseRule.getTestDataSource().getConnection();
+				PreparedStatement statement = connection.prepareStatement("SELECT count(*) FROM test_table");
+				ResultSet result = statement.executeQuery())
+		{
+			result.next();
+			return result.getInt(1);
+		}
+	}
+
+	private boolean databaseExists(PostgreSqlContainerClusterClassRule.ShardedDatabaseRule databaseRule)
+			throws SQLException
+	{
+		try (Connection connection = databaseRule.getRootDataSource().getConnection();
+				PreparedStatement statement = connection
+						.prepareStatement("SELECT 1 FROM pg_database WHERE datname = ?"))
+		{
+			statement.setString(1, databaseRule.getDatabaseName());
+
+			try (ResultSet result = statement.executeQuery())
+			{
+				return result.next();
+			}
+		}
+	}
+}
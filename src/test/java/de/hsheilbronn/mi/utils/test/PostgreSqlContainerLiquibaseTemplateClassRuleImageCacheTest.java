@@ -0,0 +1,124 @@
+package de.hsheilbronn.mi.utils.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.bridge.SLF4JBridgeHandler;
+import org.testcontainers.DockerClientFactory;
+import org.testcontainers.utility.DockerImageName;
+
+import com.github.dockerjava.api.exception.NotFoundException;
+
+public class PostgreSqlContainerLiquibaseTemplateClassRuleImageCacheTest
+{
+	static
+	{
+		SLF4JBridgeHandler.removeHandlersForRootLogger();
+		SLF4JBridgeHandler.install();
+	}
+
+	private static final Logger logger = LoggerFactory
+			.getLogger(PostgreSqlContainerLiquibaseTemplateClassRuleImageCacheTest.class);
+
+	private static final String ROOT_USER = "root_user";
+
+	private static final class StartResult
+	{
+		String dockerImageName;
+		String imageCacheKey;
+		List<String> changeSetsExecuted;
+	}
+
+	@Test
+	public void testStartFromImageCache() throws Throwable
+	{
+		logger.info("testStartFromImageCache");
+
+		StartResult first = start(createContainerRule());
+		assertNotNull(first.imageCacheKey);
+
+		String cacheImage = PostgreSqlContainerLiquibaseTemplateClassRule.IMAGE_CACHE_REPOSITORY + ":"
+				+ first.imageCacheKey;
+		try
+		{
+			// throws NotFoundException if no image created
+			DockerClientFactory.instance().client().inspectImageCmd(cacheImage).exec();
+
+			StartResult second = start(createContainerRule());
+
+			assertEquals(first.imageCacheKey, second.imageCacheKey);
+			assertEquals(cacheImage, second.dockerImageName);
+
+			// migration not executed again, change sets with execution timestamps from the cached image
+			assertEquals(first.changeSetsExecuted, second.changeSetsExecuted);
+		}
+		finally
+		{
+			try
+			{
+				DockerClientFactory.instance().client().removeImageCmd(cacheImage).withForce(true).exec();
+			}
+			catch (NotFoundException e)
+			{
+				logger.warn("Image {} not found", cacheImage);
+			}
+		}
+	}
+
+	private PostgreSqlContainerLiquibaseTemplateClassRule createContainerRule()
+	{
+		return new PostgreSqlContainerLiquibaseTemplateClassRule(DockerImageName.parse("postgres:15"), ROOT_USER,
+				"test_db", "test_template", "db.changelog.xml",
+				Map.of("liquibase_user", ROOT_USER, "server_users_group", "test_group", "server_user", "test_user",
+						"server_user_password", "test_user_password"),
+				true).withMigrationImageCache();
+	}
+
+	// rule started and stopped like a class rule, see GenericContainer#apply
+	@SuppressWarnings("deprecation")
+	private StartResult start(PostgreSqlContainerLiquibaseTemplateClassRule containerRule) throws Throwable
+	{
+		StartResult result = new StartResult();
+
+		containerRule.apply(new Statement()
+		{
+			@Override
+			public void evaluate() throws Throwable
+			{
+				result.dockerImageName = containerRule.getDockerImageName();
+				result.imageCacheKey = containerRule.getImageCacheKey();
+				result.changeSetsExecuted = getChangeSetsExecuted(containerRule);
+			}
+		}, Description.createSuiteDescription(getClass())).evaluate();
+
+		return result;
+	}
+
+	private List<String> getChangeSetsExecuted(PostgreSqlContainerLiquibaseTemplateClassRule containerRule)
+			throws SQLException
+	{
+		try (Connection connection = containerRule.getTestDataSource().getConnection();
+				PreparedStatement statement = connection.prepareStatement(
+						"SELECT id || ' ' || dateexecuted FROM databasechangelog ORDER BY orderexecuted");
+				ResultSet result = statement.executeQuery())
+		{
+			List<String> changeSets = new ArrayList<>();
+			while (result.next())
+				changeSets.add(result.getString(1));
+			return changeSets;
+		}
+	}
+}
@@ -0,0 +1,146 @@
+package de.hsheilbronn.mi.utils.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.bridge.SLF4JBridgeHandler;
+import org.testcontainers.utility.DockerImageName;
+
+public class PostgreSqlContainerLiquibaseTemplateClassRuleReplicaTest
+{
+	static
+	{
+		SLF4JBridgeHandler.removeHandlersForRootLogger();
+		SLF4JBridgeHandler.install();
+	}
+
+	private static final Logger logger = LoggerFactory
+			.getLogger(PostgreSqlContainerLiquibaseTemplateClassRuleReplicaTest.class);
+
+	private static final String ROOT_USER = "root_user";
+
+	// SQL state read_only_sql_transaction
+	private static final String READ_ONLY_SQL_TRANSACTION = "25006";
+
+	@ClassRule
+	public static final PostgreSqlContainerLiquibaseTemplateClassRule containerRule = new PostgreSqlContainerLiquibaseTemplateClassRule(
+			DockerImageName.parse("postgres:15"), ROOT_USER, "test_db", "test_template", "db.changelog.xml",
+			Map.of("liquibase_user", ROOT_USER, "server_users_group", "test_group", "server_user", "test_user",
+					"server_user_password", "test_user_password"),
+			true).withStreamingReplicas(1);
+
+	@Rule
+	public final PostgresTemplateRule templateRule = new PostgresTemplateRule(containerRule);
+
+	@Before
+	public void before() throws Exception
+	{
+		// test database recreated on the primary after the previous test
+		containerRule.awaitReplicas();
+	}
+
+	@Test
+	public void testAwaitReplicasWaitsForReplay() throws Exception
+	{
+		logger.info("testAwaitReplicasWaitsForReplay");
+
+		execute(containerRule.getReplicaDataSource(), "SELECT pg_wal_replay_pause()");
+		try
+		{
+			insertIntoTestTable();
+
+			try
+			{
+				containerRule.awaitReplicas(Duration.ofSeconds(2));
+				fail("IllegalStateException expected, replay paused");
+			}
+			catch (IllegalStateException e)
+			{
+				logger.info("Expected exception: {}", e.getMessage());
+			}
+
+			assertEquals(0, countTestTable(containerRule.getReplicaDataSource()));
+		}
+		finally
+		{
+			execute(containerRule.getReplicaDataSource(), "SELECT pg_wal_replay_resume()");
+		}
+
+		containerRule.awaitReplicas();
+		assertEquals(1, countTestTable(containerRule.getReplicaDataSource()));
+	}
+
+	@Test
+	public void testReplicaRejectsWrites() throws Exception
+	{
+		logger.info("testReplicaRejectsWrites");
+
+		try (Connection connection = containerRule.getReplicaDataSource().getConnection())
+		{
+			connection.setReadOnly(false);
+
+			try (PreparedStatement statement = connection
+					.prepareStatement("INSERT INTO test_table VALUES('test', '{}')"))
+			{
+				statement.execute();
+				fail("SQLException expected, replica is read-only");
+			}
+			catch (SQLException e)
+			{
+				logger.info("Expected exception: {}", e.getMessage());
+				assertEquals(READ_ONLY_SQL_TRANSACTION, e.getSQLState());
+			}
+		}
+
+		assertEquals(0, countTestTable(containerRule.getTestDataSource()));
+	}
+
+	private int countTestTable(DataSource dataSource) throws SQLException
+	{
+		try (Connection connection = dataSource.getConnection();
+				PreparedStatement statement = connection.prepareStatement("SELECT count(*) FROM test_table");
+				ResultSet result = statement.executeQuery())
+		{
+			result.next();
+			return result.getInt(1);
+		}
+	}
+
+	private void execute(DataSource dataSource, String sql) throws SQLException
+	{
+		try (Connection connection = dataSource.getConnection();
+				PreparedStatement statement = connection.prepareStatement(sql))
+		{
+			statement.execute();
+		}
+	}
+
+	private void insertIntoTestTable() throws SQLException
+	{
+		try (Connection connection = containerRule.getTestDataSource().getConnection())
+		{
+			connection.setReadOnly(false);
+
+			try (PreparedStatement statement = connection
+					.prepareStatement("INSERT INTO test_table VALUES('test', '{}')"))
+			{
+				statement.execute();
+			}
+		}
+	}
+}
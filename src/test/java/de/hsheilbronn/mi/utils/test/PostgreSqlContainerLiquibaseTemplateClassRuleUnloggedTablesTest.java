@@ -0,0 +1,107 @@
+package de.hsheilbronn.mi.utils.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.bridge.SLF4JBridgeHandler;
+import org.testcontainers.utility.DockerImageName;
+
+public class PostgreSqlContainerLiquibaseTemplateClassRuleUnloggedTablesTest
+{
+	static
+	{
+		SLF4JBridgeHandler.removeHandlersForRootLogger();
+		SLF4JBridgeHandler.install();
+	}
+
+	private static final Logger logger = LoggerFactory
+			.getLogger(PostgreSqlContainerLiquibaseTemplateClassRuleUnloggedTablesTest.class);
+
+	private static final String ROOT_USER = "root_user";
+
+	// pg_class.relpersistence values
+	private static final String UNLOGGED = "u";
+	private static final String PERMANENT = "p";
+
+	@Test
+	public void testTablesConvertedToUnlogged() throws Throwable
+	{
+		logger.info("testTablesConvertedToUnlogged");
+
+		// child_table references parent_table, converted first
+		assertEquals(List.of(UNLOGGED, UNLOGGED), start(createContainerRule()));
+	}
+
+	@Test
+	public void testUnloggedTablesDisabledViaSystemProperty() throws Throwable
+	{
+		logger.info("testUnloggedTablesDisabledViaSystemProperty");
+
+		System.setProperty(UnloggedTables.DISABLED_PROPERTY, "true");
+		try
+		{
+			assertEquals(List.of(PERMANENT, PERMANENT), start(createContainerRule()));
+		}
+		finally
+		{
+			System.clearProperty(UnloggedTables.DISABLED_PROPERTY);
+		}
+	}
+
+	private PostgreSqlContainerLiquibaseTemplateClassRule createContainerRule()
+	{
+		return new PostgreSqlContainerLiquibaseTemplateClassRule(DockerImageName.parse("postgres:15"), ROOT_USER,
+				"test_db", "test_template", "db.changelog.synthetic.xml", Map.of(), true).withUnloggedTables();
+	}
+
+	/**
+	 * Starts and stops the rule like a class rule.
+	 *
+	 * @return persistence of parent_table and child_table in the test database
+	 */
+	@SuppressWarnings("deprecation")
+	private List<String> start(PostgreSqlContainerLiquibaseTemplateClassRule containerRule) throws Throwable
+	{
+		List<String> persistence = new ArrayList<>();
+
+		containerRule.apply(new Statement()
+		{
+			@Override
+			public void evaluate() throws Throwable
+			{
+				persistence.add(getPersistence(containerRule, "parent_table"));
+				persistence.add(getPersistence(containerRule, "child_table"));
+			}
+		}, Description.createSuiteDescription(getClass())).evaluate();
+
+		return persistence;
+	}
+
+	private String getPersistence(PostgreSqlContainerLiquibaseTemplateClassRule containerRule, String table)
+			throws SQLException
+	{
+		try (Connection connection = containerRule.getTestDataSource().getConnection();
+				PreparedStatement statement = connection
+						.prepareStatement("SELECT relpersistence FROM pg_class WHERE oid = to_regclass(?)"))
+		{
+			statement.setString(1, table);
+
+			try (ResultSet result = statement.executeQuery())
+			{
+				return result.next() ? result.getString(1) : null;
+			}
+		}
+	}
+}
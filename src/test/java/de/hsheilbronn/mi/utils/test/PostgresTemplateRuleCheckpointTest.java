@@ -0,0 +1,199 @@
+package de.hsheilbronn.mi.utils.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.bridge.SLF4JBridgeHandler;
+import org.testcontainers.utility.DockerImageName;
+
+public class PostgresTemplateRuleCheckpointTest
+{
+	static
+	{
+		SLF4JBridgeHandler.removeHandlersForRootLogger();
+		SLF4JBridgeHandler.install();
+	}
+
+	private static final Logger logger = LoggerFactory.getLogger(PostgresTemplateRuleCheckpointTest.class);
+
+	private static final String ROOT_USER = "root_user";
+
+	@ClassRule
+	public static final PostgreSqlContainerLiquibaseTemplateClassRule containerRule = new PostgreSqlContainerLiquibaseTemplateClassRule(
+			DockerImageName.parse("postgres:15"), ROOT_USER, "test_db", "test_template", "db.changelog.xml",
+			Map.of("liquibase_user", ROOT_USER, "server_users_group", "test_group", "server_user", "test_user",
+					"server_user_password", "test_user_password"),
+			true);
+
+	@Rule
+	public final PostgresTemplateRule templateRule = new PostgresTemplateRule(containerRule);
+
+	@Test
+	public void testRestoreAfterDataChanged() throws Exception
+	{
+		logger.info("testRestoreAfterDataChanged");
+
+		execute("INSERT INTO test_table VALUES('a', '{\"v\": 1}')");
+		templateRule.checkpoint("after_a");
+
+		execute("UPDATE test_table SET json_column = '{\"v\": 2}' WHERE id_column = 'a'");
+		execute("INSERT INTO test_table VALUES('b', '{}')");
+		assertEquals(List.of("a {\"v\": 2}", "b {}"), readTestTable());
+
+		templateRule.restore("after_a");
+		assertEquals(List.of("a {\"v\": 1}"), readTestTable());
+
+		// checkpoint not consumed by restore
+		execute("DELETE FROM test_table");
+		assertEquals(List.of(), readTestTable());
+
+		templateRule.restore("after_a");
+		assertEquals(List.of("a {\"v\": 1}"), readTestTable());
+	}
+
+	@Test
+	public void testRestoreOlderCheckpoint() throws Exception
+	{
+		logger.info("testRestoreOlderCheckpoint");
+
+		templateRule.checkpoint("empty");
+		execute("INSERT INTO test_table VALUES('a', '{}')");
+		templateRule.checkpoint("after_a");
+
+		templateRule.restore("empty");
+		assertEquals(List.of(), readTestTable());
+
+		templateRule.restore("after_a");
+		assertEquals(List.of("a {}"), readTestTable());
+	}
+
+	@Test
+	public void testCheckpointsDroppedAfterTest() throws Throwable
+	{
+		logger.info("testCheckpointsDroppedAfterTest");
+
+		PostgresTemplateRule rule = new PostgresTemplateRule(containerRule);
+		runTest(rule, () ->
+		{
+			rule.checkpoint("first");
+			rule.checkpoint("second");
+
+			assertTrue(databaseExists(rule.getCheckpointDatabaseName("first")));
+			assertTrue(databaseExists(rule.getCheckpointDatabaseName("second")));
+		});
+
+		assertFalse(databaseExists(rule.getCheckpointDatabaseName("first")));
+		assertFalse(databaseExists(rule.getCheckpointDatabaseName("second")));
+	}
+
+	@Test
+	public void testCheckpointsDroppedAfterFailedTest() throws Throwable
+	{
+		logger.info("testCheckpointsDroppedAfterFailedTest");
+
+		PostgresTemplateRule rule = new PostgresTemplateRule(containerRule);
+		try
+		{
+			runTest(rule, () ->
+			{
+				rule.checkpoint("first");
+				throw new IllegalStateException("test failure");
+			});
+			fail("IllegalStateException expected");
+		}
+		catch (IllegalStateException e)
+		{
+			logger.info("Expected exception: {}", e.getMessage());
+		}
+
+		assertFalse(databaseExists(rule.getCheckpointDatabaseName("first")));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testRestoreUnknownCheckpoint() throws Exception
+	{
+		templateRule.restore("unknown");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidCheckpointName() throws Exception
+	{
+		templateRule.checkpoint("Invalid-Name");
+	}
+
+	private interface TestBody
+	{
+		void run() throws Exception;
+	}
+
+	private void runTest(PostgresTemplateRule rule, TestBody body) throws Throwable
+	{
+		rule.apply(new Statement()
+		{
+			@Override
+			public void evaluate() throws Throwable
+			{
+				body.run();
+			}
+		}, Description.createTestDescription(getClass(), "nested")).evaluate();
+	}
+
+	private boolean databaseExists(String databaseName) throws SQLException
+	{
+		try (Connection connection = containerRule.getRootDataSource().getConnection();
+				PreparedStatement statement = connection
+						.prepareStatement("SELECT 1 FROM pg_database WHERE datname = ?"))
+		{
+			statement.setString(1, databaseName);
+
+			try (ResultSet result = statement.executeQuery())
+			{
+				return result.next();
+			}
+		}
+	}
+
+	private List<String> readTestTable() throws SQLException
+	{
+		try (Connection connection = containerRule.getTestDataSource().getConnection();
+				PreparedStatement statement = connection.prepareStatement(
+						"SELECT id_column || ' ' || json_column::text FROM test_table ORDER BY id_column");
+				ResultSet result = statement.executeQuery())
+		{
+			List<String> rows = new ArrayList<>();
+			while (result.next())
+				rows.add(result.getString(1));
+			return rows;
+		}
+	}
+
+	private void execute(String sql) throws SQLException
+	{
+		try (Connection connection = containerRule.getTestDataSource().getConnection())
+		{
+			connection.setReadOnly(false);
+
+			try (PreparedStatement statement = connection.prepareStatement(sql))
+			{
+				statement.execute();
+			}
+		}
+	}
+}
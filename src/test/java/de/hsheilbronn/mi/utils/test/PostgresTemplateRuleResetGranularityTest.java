@@ -0,0 +1,278 @@
+package de.hsheilbronn.mi.utils.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.Map;
+
+import org.apache.commons.dbcp2.BasicDataSource;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.bridge.SLF4JBridgeHandler;
+import org.testcontainers.utility.DockerImageName;
+
+public class PostgresTemplateRuleResetGranularityTest
+{
+	static
+	{
+		SLF4JBridgeHandler.removeHandlersForRootLogger();
+		SLF4JBridgeHandler.install();
+	}
+
+	private static final Logger logger = LoggerFactory.getLogger(PostgresTemplateRuleResetGranularityTest.class);
+
+	private static final String ROOT_USER = "root_user";
+
+	@ClassRule
+	public static final PostgreSqlContainerLiquibaseTemplateClassRule containerRule = new PostgreSqlContainerLiquibaseTemplateClassRule(
+			DockerImageName.parse("postgres:15"), ROOT_USER, "test_db", "test_template", "db.changelog.xml",
+			Map.of("liquibase_user", ROOT_USER, "server_users_group", "test_group", "server_user", "test_user",
+					"server_user_password", "test_user_password"),
+			true);
+
+	// resets the test database after each test method, tests below run the rule under test with nested tests
+	@Rule
+	public final PostgresTemplateRule templateRule = new PostgresTemplateRule(containerRule);
+
+	@DatabaseReset(ResetGranularity.PER_CLASS)
+	private static final class PerClassAnnotated
+	{
+	}
+
+	private interface TestBody
+	{
+		void run() throws Exception;
+	}
+
+	/**
+	 * New identity for every test method, reset state is kept per class rule instance
+	 */
+	private static final class ClassRuleView implements TemplateClassRule
+	{
+		@Override
+		public BasicDataSource getRootDataSource()
+		{
+			return containerRule.getRootDataSource();
+		}
+
+		@Override
+		public String getDatabaseName()
+		{
+			return containerRule.getDatabaseName();
+		}
+
+		@Override
+		public String getTemplateDatabaseName()
+		{
+			return containerRule.getTemplateDatabaseName();
+		}
+
+		@Override
+		public BasicDataSource getTestDataSource()
+		{
+			return containerRule.getTestDataSource();
+		}
+	}
+
+	private final ClassRuleView classRule = new ClassRuleView();
+
+	@Test
+	public void testPerClassNoReset() throws Throwable
+	{
+		logger.info("testPerClassNoReset");
+
+		PostgresTemplateRule rule = new PostgresTemplateRule(classRule)
+				.withResetGranularity(ResetGranularity.PER_CLASS);
+
+		for (int i = 0; i < 3; i++)
+		{
+			int expected = i;
+			runTest(rule, getClass(), "test" + i, () ->
+			{
+				assertEquals(expected, countTestTable());
+				insertIntoTestTable("id" + expected);
+			});
+		}
+
+		assertEquals(3, countTestTable());
+		assertStatistics(getClass(), 3, 0, 3);
+	}
+
+	@Test
+	public void testPerClassAnnotation() throws Throwable
+	{
+		logger.info("testPerClassAnnotation");
+
+		PostgresTemplateRule rule = new PostgresTemplateRule(classRule);
+
+		runTest(rule, PerClassAnnotated.class, "test1", () -> insertIntoTestTable("a"));
+		runTest(rule, PerClassAnnotated.class, "test2", () -> assertEquals(1, countTestTable()));
+
+		assertStatistics(PerClassAnnotated.class, 2, 0, 2);
+	}
+
+	@Test
+	public void testPerClassEstimatedTimeSaved() throws Throwable
+	{
+		logger.info("testPerClassEstimatedTimeSaved");
+
+		// resets executed only for the first class, average reset duration shared by all classes of the class rule
+		PostgresTemplateRule resetRule = new PostgresTemplateRule(classRule);
+		runTest(resetRule, getClass(), "test0", () -> insertIntoTestTable("a"));
+
+		PostgresTemplateRule rule = new PostgresTemplateRule(classRule);
+		runTest(rule, PerClassAnnotated.class, "test1", () -> assertEquals(0, countTestTable()));
+		runTest(rule, PerClassAnnotated.class, "test2", () -> assertEquals(0, countTestTable()));
+
+		ResetState.Statistics statistics = ResetState.of(classRule).statistics(PerClassAnnotated.class.getName());
+		Duration averageResetDuration = ResetState.of(classRule).getAverageResetDuration();
+		assertTrue(averageResetDuration.toNanos() > 0);
+		assertEquals(averageResetDuration.multipliedBy(2), statistics.getEstimatedTimeSaved());
+
+		assertStatistics(PerClassAnnotated.class, 2, 0, 2);
+	}
+
+	@Test
+	public void testResetEveryNTests() throws Throwable
+	{
+		logger.info("testResetEveryNTests");
+
+		PostgresTemplateRule rule = new PostgresTemplateRule(classRule).withResetEvery(2);
+
+		runTest(rule, getClass(), "test1", () -> insertIntoTestTable("a"));
+		runTest(rule, getClass(), "test2", () ->
+		{
+			assertEquals(1, countTestTable());
+			insertIntoTestTable("b");
+		});
+		runTest(rule, getClass(), "test3", () ->
+		{
+			assertEquals(0, countTestTable());
+			insertIntoTestTable("c");
+		});
+
+		assertEquals(1, countTestTable());
+		assertStatistics(getClass(), 3, 1, 2);
+	}
+
+	@Test
+	public void testMarkDirtyForcesReset() throws Throwable
+	{
+		logger.info("testMarkDirtyForcesReset");
+
+		PostgresTemplateRule rule = new PostgresTemplateRule(classRule)
+				.withResetGranularity(ResetGranularity.ON_DEMAND);
+
+		runTest(rule, getClass(), "test1", () -> insertIntoTestTable("a"));
+		runTest(rule, getClass(), "test2", () ->
+		{
+			assertEquals(1, countTestTable());
+			rule.markDirty();
+		});
+		runTest(rule, getClass(), "test3", () -> assertEquals(0, countTestTable()));
+
+		assertStatistics(getClass(), 3, 1, 2);
+	}
+
+	@Test
+	public void testFailedTestForcesReset() throws Throwable
+	{
+		logger.info("testFailedTestForcesReset");
+
+		PostgresTemplateRule rule = new PostgresTemplateRule(classRule)
+				.withResetGranularity(ResetGranularity.PER_CLASS);
+
+		try
+		{
+			runTest(rule, getClass(), "test1", () ->
+			{
+				insertIntoTestTable("a");
+				throw new IllegalStateException("test failure");
+			});
+			fail("IllegalStateException expected");
+		}
+		catch (IllegalStateException e)
+		{
+			logger.info("Expected exception: {}", e.getMessage());
+		}
+
+		runTest(rule, getClass(), "test2", () -> assertEquals(0, countTestTable()));
+
+		assertStatistics(getClass(), 2, 1, 1);
+	}
+
+	@Test
+	public void testResetStateRemoved() throws Throwable
+	{
+		logger.info("testResetStateRemoved");
+
+		PostgresTemplateRule rule = new PostgresTemplateRule(classRule)
+				.withResetGranularity(ResetGranularity.PER_CLASS);
+		runTest(rule, getClass(), "test1", () -> insertIntoTestTable("a"));
+
+		ResetState state = ResetState.of(classRule);
+		ResetState.remove(classRule);
+
+		assertNotSame(state, ResetState.of(classRule));
+		assertEquals(0, ResetState.of(classRule).statistics(getClass().getName()).getTests());
+	}
+
+	private void runTest(PostgresTemplateRule rule, Class<?> testClass, String name, TestBody body) throws Throwable
+	{
+		rule.apply(new Statement()
+		{
+			@Override
+			public void evaluate() throws Throwable
+			{
+				body.run();
+			}
+		}, Description.createTestDescription(testClass, name)).evaluate();
+	}
+
+	private void assertStatistics(Class<?> testClass, int tests, int resets, int skippedResets)
+	{
+		ResetState.Statistics statistics = ResetState.of(classRule).statistics(testClass.getName());
+		assertEquals(tests, statistics.getTests());
+		assertEquals(resets, statistics.getResets());
+		assertEquals(skippedResets, statistics.getSkippedResets());
+
+		ResetState.remove(classRule);
+	}
+
+	private int countTestTable() throws SQLException
+	{
+		try (Connection connection = containerRule.getTestDataSource().getConnection();
+				PreparedStatement statement = connection.prepareStatement("SELECT count(*) FROM test_table");
+				ResultSet result = statement.executeQuery())
+		{
+			result.next();
+			return result.getInt(1);
+		}
+	}
+
+	private void insertIntoTestTable(String id) throws SQLException
+	{
+		try (Connection connection = containerRule.getTestDataSource().getConnection())
+		{
+			connection.setReadOnly(false);
+
+			try (PreparedStatement statement = connection.prepareStatement("INSERT INTO test_table VALUES(?, '{}')"))
+			{
+				statement.setString(1, id);
+				statement.execute();
+			}
+		}
+	}
+}
@@ -0,0 +1,163 @@
+package de.hsheilbronn.mi.utils.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.bridge.SLF4JBridgeHandler;
+import org.testcontainers.utility.DockerImageName;
+
+public class PostgresWatchdogRuleTest
+{
+	static
+	{
+		SLF4JBridgeHandler.removeHandlersForRootLogger();
+		SLF4JBridgeHandler.install();
+	}
+
+	private static final Logger logger = LoggerFactory.getLogger(PostgresWatchdogRuleTest.class);
+
+	private static final String ROOT_USER = "root_user";
+
+	// SQL state query_canceled
+	private static final String QUERY_CANCELED = "57014";
+
+	@ClassRule
+	public static final PostgreSqlContainerLiquibaseTemplateClassRule containerRule = new PostgreSqlContainerLiquibaseTemplateClassRule(
+			DockerImageName.parse("postgres:15"), ROOT_USER, "test_db", "test_template", "db.changelog.xml",
+			Map.of("liquibase_user", ROOT_USER, "server_users_group", "test_group", "server_user", "test_user",
+					"server_user_password", "test_user_password"),
+			true);
+
+	@Rule
+	public final PostgresTemplateRule templateRule = new PostgresTemplateRule(containerRule);
+
+	@Rule
+	public final PostgresWatchdogRule watchdogRule = new PostgresWatchdogRule(containerRule, Duration.ofSeconds(30));
+
+	@Test
+	public void testNotExceeded() throws Exception
+	{
+		logger.info("testNotExceeded");
+
+		assertEquals(0, countTestTable());
+		try (Connection connection = containerRule.getTestDataSource().getConnection())
+		{
+			insertIntoTestTable(connection);
+		}
+		assertEquals(1, countTestTable());
+	}
+
+	@Test
+	public void testLeakedConnectionCanceled() throws Throwable
+	{
+		logger.info("testLeakedConnectionCanceled");
+
+		PostgresWatchdogRule watchdog = new PostgresWatchdogRule(containerRule, Duration.ofSeconds(2))
+				.withCancelBlockingBackends();
+
+		Statement hangingTest = new Statement()
+		{
+			@Override
+			public void evaluate() throws Throwable
+			{
+				try (Connection leaked = containerRule.getTestDataSource().getConnection();
+						Connection blocked = containerRule.getTestDataSource().getConnection())
+				{
+					// leaked transaction idle while holding the primary key lock, terminated by watchdog
+					leaked.setAutoCommit(false);
+					insertIntoTestTable(leaked);
+
+					insertIntoTestTable(blocked);
+				}
+			}
+		};
+
+		try
+		{
+			watchdog.apply(hangingTest, Description.createTestDescription(getClass(), "hangingTest")).evaluate();
+			fail("TimeoutException expected");
+		}
+		catch (TimeoutException e)
+		{
+			assertTrue(e.getMessage().contains("blocked_by=["));
+			assertTrue(e.getMessage().contains("Canceled blocking backend"));
+		}
+
+		assertEquals(1, countTestTable());
+	}
+
+	@Test
+	public void testHangingQueryCanceled() throws Throwable
+	{
+		logger.info("testHangingQueryCanceled");
+
+		PostgresWatchdogRule watchdog = new PostgresWatchdogRule(containerRule, Duration.ofSeconds(2));
+
+		Statement hangingTest = new Statement()
+		{
+			@Override
+			public void evaluate() throws Throwable
+			{
+				try (Connection connection = containerRule.getTestDataSource().getConnection();
+						PreparedStatement statement = connection.prepareStatement("SELECT pg_sleep(600)"))
+				{
+					statement.execute();
+				}
+			}
+		};
+
+		long start = System.nanoTime();
+		try
+		{
+			watchdog.apply(hangingTest, Description.createTestDescription(getClass(), "hangingTest")).evaluate();
+			fail("TimeoutException expected");
+		}
+		catch (TimeoutException e)
+		{
+			assertTrue(e.getMessage().contains("Canceled active backend"));
+			assertEquals(1, e.getSuppressed().length);
+			assertEquals(QUERY_CANCELED, ((SQLException) e.getSuppressed()[0]).getSQLState());
+		}
+
+		assertTrue(Duration.ofNanos(System.nanoTime() - start).compareTo(Duration.ofSeconds(30)) < 0);
+		assertFalse(Thread.currentThread().isInterrupted());
+	}
+
+	private int countTestTable() throws SQLException
+	{
+		try (Connection connection = containerRule.getTestDataSource().getConnection();
+				PreparedStatement statement = connection.prepareStatement("SELECT count(*) FROM test_table");
+				ResultSet result = statement.executeQuery())
+		{
+			result.next();
+			return result.getInt(1);
+		}
+	}
+
+	private void insertIntoTestTable(Connection connection) throws SQLException
+	{
+		connection.setReadOnly(false);
+
+		try (PreparedStatement statement = connection.prepareStatement("INSERT INTO test_table VALUES('test', '{}')"))
+		{
+			statement.execute();
+		}
+	}
+}
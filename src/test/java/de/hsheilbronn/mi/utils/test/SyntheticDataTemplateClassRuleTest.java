@@ -0,0 +1,105 @@
+package de.hsheilbronn.mi.utils.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Map;
+
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.RuleChain;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.bridge.SLF4JBridgeHandler;
+import org.testcontainers.utility.DockerImageName;
+
+public class SyntheticDataTemplateClassRuleTest
+{
+	static
+	{
+		SLF4JBridgeHandler.removeHandlersForRootLogger();
+		SLF4JBridgeHandler.install();
+	}
+
+	private static final Logger logger = LoggerFactory.getLogger(SyntheticDataTemplateClassRuleTest.class);
+
+	private static final String ROOT_USER = "root_user";
+
+	// more parent rows than referenced keys read, parent keys sampled on the server
+	private static final int PARENT_ROW_COUNT = 150_000;
+	private static final int CHILD_ROW_COUNT = 250_000;
+
+	private static final PostgreSqlContainerLiquibaseTemplateClassRule containerRule = new PostgreSqlContainerLiquibaseTemplateClassRule(
+			DockerImageName.parse("postgres:15"), ROOT_USER, "test_db", "test_template", "db.changelog.synthetic.xml",
+			Map.of(), true);
+
+	// child table configured first, generator must load the parent table first
+	private static final SyntheticDataSpec spec = new SyntheticDataSpec(42).withTable("child_table", CHILD_ROW_COUNT)
+			.withTable("parent_table", PARENT_ROW_COUNT);
+
+	private static final SyntheticDataTemplateClassRule syntheticDataRule = new SyntheticDataTemplateClassRule(
+			containerRule, spec);
+
+	@ClassRule
+	public static final RuleChain ruleChain = RuleChain.outerRule(containerRule).around(syntheticDataRule);
+
+	@Rule
+	public final PostgresTemplateRule templateRule = new PostgresTemplateRule(syntheticDataRule);
+
+	@Test
+	public void testForeignKeysReferenceParentRows() throws Exception
+	{
+		logger.info("testForeignKeysReferenceParentRows");
+
+		assertEquals(PARENT_ROW_COUNT, queryLong("SELECT count(*) FROM parent_table"));
+		assertEquals(CHILD_ROW_COUNT, queryLong("SELECT count(*) FROM child_table"));
+		assertEquals(0, queryLong("SELECT count(*) FROM child_table c LEFT JOIN parent_table p ON p.id = c.parent_id "
+				+ "WHERE p.id IS NULL"));
+
+		long referencedParents = queryLong("SELECT count(DISTINCT parent_id) FROM child_table");
+		logger.info("{} of {} parent rows referenced", referencedParents, PARENT_ROW_COUNT);
+
+		assertTrue(referencedParents > 1);
+		assertTrue(referencedParents <= SyntheticDataGenerator.MAX_REFERENCED_KEYS);
+	}
+
+	@Test
+	public void testSequenceValuesFollowRowOrder() throws Exception
+	{
+		logger.info("testSequenceValuesFollowRowOrder");
+
+		// serial ids drawn in row order, text values start with the zero based row index in base 36
+		assertEquals(PARENT_ROW_COUNT, queryLong("SELECT max(id) FROM parent_table"));
+		assertEquals(1, queryLong("SELECT count(*) FROM parent_table WHERE id = 1 AND name LIKE '0\\_%'"));
+		assertEquals(1, queryLong("SELECT count(*) FROM parent_table WHERE id = 37 AND name LIKE '10\\_%'"));
+	}
+
+	@Test
+	public void testTemplateKeyDependsOnSchema() throws Exception
+	{
+		logger.info("testTemplateKeyDependsOnSchema");
+
+		String templateDatabaseName = syntheticDataRule.getTemplateDatabaseName();
+
+		assertTrue(templateDatabaseName.startsWith(containerRule.getTemplateDatabaseName() + "_"));
+		assertNotEquals(containerRule.getTemplateDatabaseName() + "_" + spec.getKey(), templateDatabaseName);
+		assertEquals(containerRule.getTemplateDatabaseName().length() + 13, templateDatabaseName.length());
+	}
+
+	private long queryLong(String sql) throws SQLException
+	{
+		try (Connection connection = containerRule.getTestDataSource().getConnection();
+				PreparedStatement statement = connection.prepareStatement(sql);
+				ResultSet result = statement.executeQuery())
+		{
+			result.next();
+			return result.getLong(1);
+		}
+	}
+}